@@ -18,11 +18,13 @@ package fr.inria.lille.shexjava.schema.abstrsynt;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.commons.rdf.api.RDFTerm;
 
 import fr.inria.lille.shexjava.schema.analysis.ShapeExpressionVisitor;
 import fr.inria.lille.shexjava.schema.concrsynt.Constraint;
+import fr.inria.lille.shexjava.util.LRUCache;
 
 /**
  * 
@@ -33,17 +35,71 @@ import fr.inria.lille.shexjava.schema.concrsynt.Constraint;
 public class NodeConstraint extends ShapeExpr implements AnnotedObject{
 	private List<Annotation> annotations;
 	private List<Constraint> constraints;
+	private volatile LRUCache<RDFTerm,Boolean> cache;
+	private final LongAdder cacheHits = new LongAdder();
+	private final LongAdder cacheMisses = new LongAdder();
 	
 	public NodeConstraint (List<Constraint> constraints) {
 		this.constraints = constraints;
 	}
 	
 	public boolean contains(RDFTerm node) {
+		LRUCache<RDFTerm,Boolean> results = cache;
+		if (results == null)
+			return evaluate(node);
+		Boolean result = results.get(node);
+		if (result != null) {
+			cacheHits.increment();
+			return result;
+		}
+		cacheMisses.increment();
+		result = evaluate(node);
+		results.put(node, result);
+		return result;
+	}
+	
+	private boolean evaluate(RDFTerm node) {
 		for (Constraint s : constraints)
 			if (! s.contains(node))
 				return false;
 		return true;
 	}
+	
+	/** Memorizes the result of {@link #contains(RDFTerm)} for the last tested terms.
+	 * Useful when the same values are tested many times, for instance with datatype or pattern constraints.
+	 * The memorized results are dropped and the counters are reset.
+	 * 
+	 * @param maxSize the maximal number of memorized terms, 0 disables the memorization
+	 */
+	public void setCacheSize(int maxSize) {
+		if (maxSize < 0)
+			throw new IllegalArgumentException("Invalid argument value: the size of the cache must be positive or zero.");
+		cache = maxSize == 0 ? null : new LRUCache<>(maxSize);
+		cacheHits.reset();
+		cacheMisses.reset();
+	}
+	
+	/** The maximal number of memorized terms, 0 if the memorization is disabled. */
+	public int getCacheSize() {
+		LRUCache<RDFTerm,Boolean> results = cache;
+		return results == null ? 0 : results.getMaxSize();
+	}
+	
+	/** The number of calls to {@link #contains(RDFTerm)} answered with a memorized result. */
+	public long getCacheHits() {
+		return cacheHits.sum();
+	}
+	
+	/** The number of calls to {@link #contains(RDFTerm)} that evaluated the constraints while the memorization was enabled. */
+	public long getCacheMisses() {
+		return cacheMisses.sum();
+	}
+	
+	public void clearCache() {
+		LRUCache<RDFTerm,Boolean> results = cache;
+		if (results != null)
+			results.clear();
+	}
 
 	public List<Constraint> getConstraints() {
 		return constraints;
@@ -36,10 +36,14 @@ public class FacetStringConstraint implements Constraint {
 	private Integer length, minlength, maxlength;
 	private String patternString;
 	private String flags;
+	// compiled at the first use of the pattern
+	private volatile XPath.CompiledRegex compiledPattern;
 	
 	public void setFlags(String flags) {
-		if (this.flags == null)
+		if (this.flags == null) {
 			this.flags = flags;
+			this.compiledPattern = null;
+		}
 		else throw new IllegalStateException("flags already set");
 	}
 		
@@ -61,8 +65,10 @@ public class FacetStringConstraint implements Constraint {
 	public void setPattern(String patternString) {
 		if (patternString == null)
 			return;
-		if (this.patternString == null)
+		if (this.patternString == null) {
 			this.patternString = patternString;
+			this.compiledPattern = null;
+		}
 		else throw new IllegalStateException("pattern already set");
 	}
 	@Override
@@ -74,7 +80,7 @@ public class FacetStringConstraint implements Constraint {
 			lex = ((IRI)node).getIRIString();
 		else if (node instanceof BlankNode)
 			lex = ((BlankNode)node).ntriplesString().substring(2);
-		if (patternString != null && ! XPath.matches(lex, patternString,flags))
+		if (patternString != null && ! getCompiledPattern().matches(lex))
 			return false;
 		if (length != null && lex.length() != length)
 			return false;
@@ -183,6 +189,17 @@ public class FacetStringConstraint implements Constraint {
 
 	public void setPatternString(String patternString) {
 		this.patternString = patternString;
+		this.compiledPattern = null;
+	}
+	
+	// the pattern is compiled again if the engine has been changed with XPath.setJavaRegexEnabled since it was compiled
+	private XPath.CompiledRegex getCompiledPattern() {
+		XPath.CompiledRegex result = compiledPattern;
+		if (result == null || result.isJavaRegexEnabled() != XPath.isJavaRegexEnabled()) {
+			result = XPath.compile(patternString, flags);
+			compiledPattern = result;
+		}
+		return result;
 	}
 
 	public Integer getLength() {
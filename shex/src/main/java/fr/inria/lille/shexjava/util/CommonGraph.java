@@ -16,10 +16,10 @@
  ******************************************************************************/
 package fr.inria.lille.shexjava.util;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -49,9 +49,9 @@ public class CommonGraph {
 	public static List<Triple> getOutNeighboursWithPredicate(Graph g,RDFTerm focusNode, Set<IRI> predicates){
 		if (focusNode instanceof Literal)
 			return Collections.emptyList();
-		List<Triple> result = new LinkedList<>();
+		List<Triple> result = new ArrayList<>();
 		for (IRI pred:predicates) 
-			result.addAll(g.stream((BlankNodeOrIRI) focusNode, pred, null).collect(Collectors.toList()));
+			g.stream((BlankNodeOrIRI) focusNode, pred, null).forEach(result::add);
 		
 		return result;
 	}
@@ -59,9 +59,9 @@ public class CommonGraph {
 	public static List<Triple> getInNeighboursWithPredicate(Graph g,RDFTerm focusNode, Set<IRI> predicates){
 		if (focusNode instanceof Literal)
 			return Collections.emptyList();
-		List<Triple> result = new LinkedList<>();
+		List<Triple> result = new ArrayList<>();
 		for (IRI pred:predicates)
-			result.addAll(g.stream(null, pred, focusNode).collect(Collectors.toList()));
+			g.stream(null, pred, focusNode).forEach(result::add);
 		return result;
 	}
 	
@@ -75,5 +75,14 @@ public class CommonGraph {
 		}
 		return result;
 	}
+	
+	/** Scans the graph once to collect its nodes. The enumerator can be reused until the graph is modified.
+	 * 
+	 * @param g
+	 * @return the enumerator of the subjects and objects of the graph
+	 */
+	public static NodeEnumerator getNodeEnumerator(Graph g){
+		return new MaterializedNodeEnumerator(g);
+	}
 
 }
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.apache.commons.rdf.api.BlankNodeOrIRI;
+import org.apache.commons.rdf.api.Graph;
+import org.apache.commons.rdf.api.IRI;
+import org.apache.commons.rdf.api.Literal;
+import org.apache.commons.rdf.api.RDFTerm;
+import org.apache.commons.rdf.api.Triple;
+
+/** Fetches the neighbourhood of a node in a commons-rdf graph.
+ * 
+ * In each direction, when the number of predicates is at most maxPredicateQueries, the graph is queried once for every predicate,
+ * which uses the indexes of the backend and does not read the other triples of the node, for instance on a hub node.
+ * Otherwise, all the triples of the node in this direction are read once and filtered by the set of predicates.
+ * As in {@link CommonGraph}, a literal has no neighbourhood.
+ */
+public class GraphNeighbourhoodProvider implements NeighbourhoodProvider {
+	public static final int DEFAULT_MAX_PREDICATE_QUERIES = 8;
+	
+	private final Graph graph;
+	private final int maxPredicateQueries;
+	
+	public GraphNeighbourhoodProvider(Graph graph) {
+		this(graph, DEFAULT_MAX_PREDICATE_QUERIES);
+	}
+	
+	/**
+	 * @param graph
+	 * @param maxPredicateQueries the maximal number of predicates in one direction for which the graph is queried by predicate, 
+	 *        1 to read all the triples of the node as soon as there are several predicates
+	 */
+	public GraphNeighbourhoodProvider(Graph graph, int maxPredicateQueries) {
+		if (maxPredicateQueries < 1)
+			throw new IllegalArgumentException("Invalid argument value: maxPredicateQueries must be positive.");
+		this.graph = graph;
+		this.maxPredicateQueries = maxPredicateQueries;
+	}
+
+	@Override
+	public List<Triple> getNeighbourhood(RDFTerm node, Set<IRI> forwardPredicates, Set<IRI> inversePredicates) {
+		List<Triple> result = new ArrayList<>();
+		if (node instanceof Literal)
+			return result;
+		BlankNodeOrIRI subject = (BlankNodeOrIRI) node;
+		
+		collect(null, node, inversePredicates, result);
+		if (forwardPredicates == null)
+			collect(graph.stream(subject, null, null), null, result);
+		else
+			collect(subject, null, forwardPredicates, result);
+		return result;
+	}
+	
+	// one of subject and object is null
+	private void collect(BlankNodeOrIRI subject, RDFTerm object, Set<IRI> predicates, List<Triple> result) {
+		if (predicates.isEmpty())
+			return;
+		if (predicates.size() <= maxPredicateQueries) {
+			for (IRI predicate:predicates)
+				collect(graph.stream(subject, predicate, object), null, result);
+		} else {
+			collect(graph.stream(subject, null, object), predicates, result);
+		}
+	}
+	
+	// predicates is null if the triples do not have to be filtered
+	private static void collect(Stream<? extends Triple> triples, Set<IRI> predicates, List<Triple> result) {
+		try (Stream<? extends Triple> stream = triples) {
+			stream.forEach(triple -> {
+				if (predicates == null || predicates.contains(triple.getPredicate()))
+					result.add(triple);
+			});
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.util;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/** A stack of distinct primitive long values, that gives in constant time whether a value is in the stack and at which depth.
+ *
+ * The values are kept in an array, and their depths in a hash table with open addressing and linear probing. The stack is not thread-safe.
+ */
+public class IndexedLongStack {
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] stack;
+	private int size;
+	// hash table from the values to their depth plus one, 0 marks an empty slot
+	private long[] keys;
+	private int[] depths;
+	private int mask;
+
+
+	public IndexedLongStack() {
+		this.stack = new long[MIN_CAPACITY];
+		allocate(MIN_CAPACITY);
+	}
+
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/** Pushes the value on the top of the stack.
+	 *
+	 * @param value must not already be in the stack
+	 */
+	public void push(long value) {
+		if (indexOf(value) >= 0)
+			throw new IllegalArgumentException("The value is already in the stack.");
+		if (size == stack.length)
+			stack = Arrays.copyOf(stack, size * 2);
+		stack[size] = value;
+		int index = slot(value);
+		while (depths[index] != 0)
+			index = (index + 1) & mask;
+		keys[index] = value;
+		depths[index] = size + 1;
+		size++;
+		if (size > (mask + 1) * 3 / 4)
+			resize((mask + 1) * 2);
+	}
+
+	/** Removes the value on the top of the stack.
+	 *
+	 * @return the removed value
+	 */
+	public long pop() {
+		if (size == 0)
+			throw new NoSuchElementException();
+		long value = stack[--size];
+		// shift back the following entries of the cluster so that no tombstone is needed
+		int hole = indexOf(value);
+		int next = (hole + 1) & mask;
+		while (depths[next] != 0) {
+			int home = slot(keys[next]);
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				keys[hole] = keys[next];
+				depths[hole] = depths[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		depths[hole] = 0;
+		return value;
+	}
+
+	/** The value on the top of the stack. */
+	public long peek() {
+		if (size == 0)
+			throw new NoSuchElementException();
+		return stack[size - 1];
+	}
+
+	public boolean contains(long value) {
+		return indexOf(value) >= 0;
+	}
+
+	/** The position of the value from the bottom of the stack, like {@link java.util.List#indexOf}.
+	 *
+	 * @param value
+	 * @return the depth of the value, the bottom of the stack being at depth 0, or -1 if the value is not in the stack
+	 */
+	public int depth(long value) {
+		int index = indexOf(value);
+		return index < 0 ? -1 : depths[index] - 1;
+	}
+
+	public void clear() {
+		if (size == 0)
+			return;
+		Arrays.fill(depths, 0);
+		size = 0;
+	}
+
+
+	private int indexOf(long value) {
+		int index = slot(value);
+		while (depths[index] != 0) {
+			if (keys[index] == value)
+				return index;
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	private int slot(long value) {
+		long hash = value * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		depths = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		int[] oldDepths = depths;
+		allocate(capacity);
+		for (int i = 0; i < oldDepths.length; i++) {
+			if (oldDepths[i] != 0) {
+				int index = slot(oldKeys[i]);
+				while (depths[index] != 0)
+					index = (index + 1) & mask;
+				keys[index] = oldKeys[i];
+				depths[index] = oldDepths[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded cache that evicts the least recently used entry when it is full.
+ *
+ * The cache is thread-safe. Null keys and values are not allowed.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class LRUCache<K,V> {
+	private final int maxSize;
+	private final LinkedHashMap<K,V> entries;
+
+
+	/**
+	 * @param maxSize the maximal number of entries in the cache
+	 */
+	public LRUCache(int maxSize) {
+		if (maxSize < 1)
+			throw new IllegalArgumentException("Invalid argument value: the size of the cache must be positive.");
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<K,V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
+				return size() > LRUCache.this.maxSize;
+			}
+		};
+	}
+
+
+	/** The value associated to the key, or null if the key is not in the cache. */
+	public synchronized V get(K key) {
+		return entries.get(key);
+	}
+
+	public synchronized void put(K key, V value) {
+		if (key == null || value == null)
+			throw new IllegalArgumentException("Null keys and values are not allowed.");
+		entries.put(key, value);
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+}
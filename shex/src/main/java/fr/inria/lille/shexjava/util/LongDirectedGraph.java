@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.util;
+
+import java.util.Arrays;
+
+/** A directed graph whose vertices are primitive long values, with the incoming and the outgoing edges of every vertex.
+ *
+ * There is at most one edge from a vertex to another, loops are allowed. The graph is not thread-safe.
+ */
+public class LongDirectedGraph {
+	private static final long[] NO_VERTEX = new long[0];
+
+	private final LongObjectHashMap<Adjacency> vertices;
+
+
+	public LongDirectedGraph() {
+		this.vertices = new LongObjectHashMap<>();
+	}
+
+
+	public int getNbVertices() {
+		return vertices.size();
+	}
+
+	public boolean isEmpty() {
+		return vertices.isEmpty();
+	}
+
+	public boolean containsVertex(long vertex) {
+		return vertices.containsKey(vertex);
+	}
+
+	/** Adds the vertex if it is not in the graph. */
+	public void addVertex(long vertex) {
+		if (!vertices.containsKey(vertex))
+			vertices.put(vertex, new Adjacency());
+	}
+
+	/** Adds the edge, and its vertices if they are not in the graph.
+	 *
+	 * @param source
+	 * @param target
+	 * @return true if the edge was not already in the graph
+	 */
+	public boolean addEdge(long source, long target) {
+		addVertex(source);
+		addVertex(target);
+		Adjacency sourceAdj = vertices.get(source);
+		Adjacency targetAdj = vertices.get(target);
+		// the existing edge is searched in the shorter list
+		if (sourceAdj.nbOut <= targetAdj.nbIn) {
+			if (contains(sourceAdj.out, sourceAdj.nbOut, target))
+				return false;
+		} else if (contains(targetAdj.in, targetAdj.nbIn, source))
+			return false;
+		sourceAdj.addOut(target);
+		targetAdj.addIn(source);
+		return true;
+	}
+
+	/** Removes the vertex and all its edges. Does nothing if the vertex is not in the graph. */
+	public void removeVertex(long vertex) {
+		Adjacency adj = vertices.remove(vertex);
+		if (adj == null)
+			return;
+		for (int i = 0; i < adj.nbOut; i++) {
+			Adjacency target = vertices.get(adj.out[i]);
+			if (target != null)
+				target.nbIn = removeAll(target.in, target.nbIn, vertex);
+		}
+		for (int i = 0; i < adj.nbIn; i++) {
+			Adjacency source = vertices.get(adj.in[i]);
+			if (source != null)
+				source.nbOut = removeAll(source.out, source.nbOut, vertex);
+		}
+	}
+
+	/** The sources of the edges whose target is the vertex.
+	 *
+	 * @param vertex
+	 * @return a copy of the sources, empty if the vertex is not in the graph
+	 */
+	public long[] getSources(long vertex) {
+		Adjacency adj = vertices.get(vertex);
+		return adj == null ? NO_VERTEX : Arrays.copyOf(adj.in, adj.nbIn);
+	}
+
+	/** The targets of the edges whose source is the vertex.
+	 *
+	 * @param vertex
+	 * @return a copy of the targets, empty if the vertex is not in the graph
+	 */
+	public long[] getTargets(long vertex) {
+		Adjacency adj = vertices.get(vertex);
+		return adj == null ? NO_VERTEX : Arrays.copyOf(adj.out, adj.nbOut);
+	}
+
+	/** Removes all the vertices, the graph can then be reused. */
+	public void clear() {
+		vertices.clear();
+	}
+
+
+	private static boolean contains(long[] values, int size, long value) {
+		for (int i = 0; i < size; i++)
+			if (values[i] == value)
+				return true;
+		return false;
+	}
+
+	// removes the occurrences of the value in the first size elements, and returns the new size
+	private static int removeAll(long[] values, int size, long value) {
+		int newSize = 0;
+		for (int i = 0; i < size; i++)
+			if (values[i] != value)
+				values[newSize++] = values[i];
+		return newSize;
+	}
+
+	private static class Adjacency {
+		private long[] out = NO_VERTEX;
+		private int nbOut;
+		private long[] in = NO_VERTEX;
+		private int nbIn;
+
+		void addOut(long vertex) {
+			if (nbOut == out.length)
+				out = Arrays.copyOf(out, Math.max(4, nbOut * 2));
+			out[nbOut++] = vertex;
+		}
+
+		void addIn(long vertex) {
+			if (nbIn == in.length)
+				in = Arrays.copyOf(in, Math.max(4, nbIn * 2));
+			in[nbIn++] = vertex;
+		}
+	}
+}
@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.util;
+
+import java.util.Arrays;
+
+/** A hash map with primitive long keys, that does not box the keys.
+ *
+ * The map uses open addressing with linear probing. Null values are not allowed. The map is not thread-safe.
+ *
+ * @param <V> the type of the values
+ */
+public class LongObjectHashMap<V> {
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;
+	private Object[] values;
+	private int size;
+	private int mask;
+
+
+	public LongObjectHashMap() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * @param expectedSize the number of entries that can be stored without resizing the map
+	 */
+	public LongObjectHashMap(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity * 3 / 4 < expectedSize)
+			capacity *= 2;
+		allocate(capacity);
+	}
+
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		int index = indexOf(key);
+		return index < 0 ? null : (V) values[index];
+	}
+
+	public V getOrDefault(long key, V defaultValue) {
+		V value = get(key);
+		return value == null ? defaultValue : value;
+	}
+
+	public boolean containsKey(long key) {
+		return indexOf(key) >= 0;
+	}
+
+	/** Associates the value to the key.
+	 *
+	 * @param key
+	 * @param value must not be null
+	 * @return the previous value associated to the key, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value == null)
+			throw new IllegalArgumentException("Null values are not allowed.");
+		int index = slot(key);
+		while (values[index] != null) {
+			if (keys[index] == key) {
+				V previous = (V) values[index];
+				values[index] = value;
+				return previous;
+			}
+			index = (index + 1) & mask;
+		}
+		keys[index] = key;
+		values[index] = value;
+		if (++size > (mask + 1) * 3 / 4)
+			resize((mask + 1) * 2);
+		return null;
+	}
+
+	/** Removes the key from the map.
+	 *
+	 * @param key
+	 * @return the value that was associated to the key, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		int index = indexOf(key);
+		if (index < 0)
+			return null;
+		V previous = (V) values[index];
+		// shift back the following entries of the cluster so that no tombstone is needed
+		int hole = index;
+		int next = (hole + 1) & mask;
+		while (values[next] != null) {
+			int home = slot(keys[next]);
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				keys[hole] = keys[next];
+				values[hole] = values[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		values[hole] = null;
+		size--;
+		return previous;
+	}
+
+	public void clear() {
+		if (size == 0)
+			return;
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	/** Calls the visitor on every entry of the map. The map must not be modified during the visit. */
+	@SuppressWarnings("unchecked")
+	public void forEach(EntryVisitor<? super V> visitor) {
+		for (int i = 0; i < values.length; i++)
+			if (values[i] != null)
+				visitor.visit(keys[i], (V) values[i]);
+	}
+
+	/** The keys of the map. */
+	public long[] keys() {
+		long[] result = new long[size];
+		int pos = 0;
+		for (int i = 0; i < values.length; i++)
+			if (values[i] != null)
+				result[pos++] = keys[i];
+		return result;
+	}
+
+
+	@FunctionalInterface
+	public interface EntryVisitor<V> {
+		void visit(long key, V value);
+	}
+
+
+	private int indexOf(long key) {
+		int index = slot(key);
+		while (values[index] != null) {
+			if (keys[index] == key)
+				return index;
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	private int slot(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+	}
+
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] != null) {
+				int index = slot(oldKeys[i]);
+				while (values[index] != null)
+					index = (index + 1) & mask;
+				keys[index] = oldKeys[i];
+				values[index] = oldValues[i];
+			}
+		}
+	}
+}
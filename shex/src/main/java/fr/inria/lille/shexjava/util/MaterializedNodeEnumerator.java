@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.util;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.apache.commons.rdf.api.Graph;
+import org.apache.commons.rdf.api.RDFTerm;
+import org.apache.commons.rdf.api.Triple;
+
+/** A {@link NodeEnumerator} that keeps the set of nodes collected by a single scan of the triples of the graph. */
+class MaterializedNodeEnumerator implements NodeEnumerator {
+	private final Set<RDFTerm> nodes;
+	
+	MaterializedNodeEnumerator(Graph graph) {
+		Set<RDFTerm> result = new HashSet<>();
+		Iterator<Triple> iter = graph.iterate().iterator();
+		while(iter.hasNext()) {
+			Triple next = iter.next();
+			result.add(next.getSubject());
+			result.add(next.getObject());
+		}
+		this.nodes = Collections.unmodifiableSet(result);
+	}
+
+	@Override
+	public int getNbNodes() {
+		return nodes.size();
+	}
+
+	@Override
+	public boolean contains(RDFTerm node) {
+		return nodes.contains(node);
+	}
+
+	@Override
+	public Stream<RDFTerm> stream() {
+		return nodes.stream();
+	}
+	
+	@Override
+	public Iterator<RDFTerm> iterator() {
+		return nodes.iterator();
+	}
+}
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.util;
+
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.rdf.api.IRI;
+import org.apache.commons.rdf.api.RDFTerm;
+import org.apache.commons.rdf.api.Triple;
+
+/** Fetches the triples of the neighbourhood of a node that can be matched by a shape.
+ * 
+ * The neighbourhood is requested with all the predicates at once, so that an implementation can minimize the number of accesses to the graph.
+ * {@link GraphNeighbourhoodProvider} is the default implementation for a commons-rdf graph. 
+ * A backend can provide an implementation that uses its own bulk access to the triples of a node.
+ */
+public interface NeighbourhoodProvider {
+
+	/** The triples with the node as subject and a forward predicate, and the triples with the node as object and an inverse predicate.
+	 * 
+	 * @param node
+	 * @param forwardPredicates the predicates of the outgoing triples, or null for all the outgoing triples
+	 * @param inversePredicates the predicates of the incoming triples
+	 * @return the triples of the neighbourhood, the incoming triples first
+	 */
+	public List<Triple> getNeighbourhood(RDFTerm node, Set<IRI> forwardPredicates, Set<IRI> inversePredicates);
+}
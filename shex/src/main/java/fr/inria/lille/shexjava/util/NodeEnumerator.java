@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.util;
+
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import org.apache.commons.rdf.api.RDFTerm;
+
+/** Enumerates the nodes of a graph, that is the subjects and the objects of its triples, each node once.
+ * 
+ * An enumerator corresponds to a snapshot of the graph and can be reused until the graph is modified.
+ * {@link CommonGraph#getNodeEnumerator} scans the graph once and keeps the set of nodes. 
+ * A backend with a native index on the subjects and the objects can provide an implementation that streams the nodes without materializing them.
+ */
+public interface NodeEnumerator extends Iterable<RDFTerm> {
+
+	/** The number of nodes, that can be used to size the structures indexed by the nodes. */
+	public int getNbNodes();
+	
+	/** Tests whether the node is the subject or the object of a triple of the graph. */
+	public boolean contains(RDFTerm node);
+	
+	public Stream<RDFTerm> stream();
+	
+	@Override
+	public default Iterator<RDFTerm> iterator() {
+		return stream().iterator();
+	}
+}
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.rdf.api.RDFTerm;
+
+import fr.inria.lille.shexjava.schema.Label;
+
+/** Associates a dense integer id to the RDF terms and the shape labels.
+ *
+ * Ids start at 0 and are assigned in the order of the first request. A pair (node, label) can be packed in a single long with {@link #pack(int, int)}.
+ * The dictionary only grows and is thread-safe: reading the id of a known term does not lock.
+ */
+public class TermDictionary {
+	public static final int UNKNOWN = -1;
+
+	private final ConcurrentHashMap<RDFTerm,Integer> termIds;
+	private final ConcurrentHashMap<Label,Integer> labelIds;
+	private volatile RDFTerm[] terms;
+	private volatile Label[] labels;
+	private int nbTerms;
+	private int nbLabels;
+
+
+	public TermDictionary() {
+		termIds = new ConcurrentHashMap<>();
+		labelIds = new ConcurrentHashMap<>();
+		terms = new RDFTerm[64];
+		labels = new Label[16];
+	}
+
+
+	/** The id of the term, a new id is assigned if the term is not in the dictionary. */
+	public int getId(RDFTerm term) {
+		Integer id = termIds.get(term);
+		if (id != null)
+			return id;
+		return addTerm(term);
+	}
+
+	/** The id of the label, a new id is assigned if the label is not in the dictionary. */
+	public int getId(Label label) {
+		Integer id = labelIds.get(label);
+		if (id != null)
+			return id;
+		return addLabel(label);
+	}
+
+	/** The id of the term, or {@link #UNKNOWN} if the term is not in the dictionary. */
+	public int findId(RDFTerm term) {
+		Integer id = termIds.get(term);
+		return id == null ? UNKNOWN : id;
+	}
+
+	/** The id of the label, or {@link #UNKNOWN} if the label is not in the dictionary. */
+	public int findId(Label label) {
+		Integer id = labelIds.get(label);
+		return id == null ? UNKNOWN : id;
+	}
+
+	public RDFTerm getTerm(int id) {
+		return terms[id];
+	}
+
+	public Label getLabel(int id) {
+		return labels[id];
+	}
+
+	public int getNbTerms() {
+		return termIds.size();
+	}
+
+	public int getNbLabels() {
+		return labelIds.size();
+	}
+
+
+	/** The key of the pair (node, label), or {@link Long#MIN_VALUE} if one of them is not in the dictionary. */
+	public long findKey(RDFTerm node, Label label) {
+		int nodeId = findId(node);
+		int labelId = findId(label);
+		if (nodeId == UNKNOWN || labelId == UNKNOWN)
+			return Long.MIN_VALUE;
+		return pack(nodeId, labelId);
+	}
+
+	/** The key of the pair (node, label), ids are assigned if necessary. */
+	public long getKey(RDFTerm node, Label label) {
+		return pack(getId(node), getId(label));
+	}
+
+	public RDFTerm getTermOfKey(long key) {
+		return getTerm(nodeId(key));
+	}
+
+	public Label getLabelOfKey(long key) {
+		return getLabel(labelId(key));
+	}
+
+	public Pair<RDFTerm,Label> unpack(long key) {
+		return new Pair<>(getTermOfKey(key), getLabelOfKey(key));
+	}
+
+
+	public static long pack(int nodeId, int labelId) {
+		return ((long) nodeId << 32) | (labelId & 0xFFFFFFFFL);
+	}
+
+	public static int nodeId(long key) {
+		return (int) (key >>> 32);
+	}
+
+	public static int labelId(long key) {
+		return (int) key;
+	}
+
+
+	private synchronized int addTerm(RDFTerm term) {
+		Integer id = termIds.get(term);
+		if (id != null)
+			return id;
+		if (nbTerms == terms.length)
+			terms = Arrays.copyOf(terms, terms.length * 2);
+		// the term is stored before the id is published in the map, so a thread that knows the id sees the term
+		terms[nbTerms] = term;
+		termIds.put(term, nbTerms);
+		return nbTerms++;
+	}
+
+	private synchronized int addLabel(Label label) {
+		Integer id = labelIds.get(label);
+		if (id != null)
+			return id;
+		if (nbLabels == labels.length)
+			labels = Arrays.copyOf(labels, labels.length * 2);
+		labels[nbLabels] = label;
+		labelIds.put(label, nbLabels);
+		return nbLabels++;
+	}
+}
@@ -16,13 +16,16 @@
  ******************************************************************************/
 package fr.inria.lille.shexjava.util;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import net.sf.saxon.Configuration;
 import net.sf.saxon.expr.EarlyEvaluationContext;
 import net.sf.saxon.expr.XPathContext;
-import net.sf.saxon.functions.Matches;
+import net.sf.saxon.regex.RegularExpression;
 import net.sf.saxon.s9api.Processor;
-import net.sf.saxon.s9api.XdmAtomicValue;
 import net.sf.saxon.trans.XPathException;
-import net.sf.saxon.value.AtomicValue;
 
 /** Wrapper to connect and used XPath 3.1.
  * 
@@ -30,25 +33,138 @@ import net.sf.saxon.value.AtomicValue;
  */
 public class XPath {
 	public static XPathContext context = new EarlyEvaluationContext((new Processor(false)).getUnderlyingConfiguration());
-	public static Matches matcher = new Matches();
+	
+	public static final int REGEX_CACHE_SIZE = 1024;
+	private static final String NULL_CHARACTER_REPLACEMENT = "NULLCHARACTER0000REPLACEMENT";
+	private static final LRUCache<Pair<String,String>,CompiledRegex> regexCache = new LRUCache<>(REGEX_CACHE_SIZE);
+	private static volatile boolean javaRegexEnabled = true;
 	
 	
 	/** Respecting syntaxe in 3.1
 	 * 
+	 * @throws IllegalArgumentException if the regular expression is invalid
 	 */
 	public static boolean matches(String input, String regex, String flags) {
-		String tmpregex = regex.replaceAll("\00","NULLCHARACTER0000REPLACEMENT");
-		String tmpinput = input.replaceAll("\00","NULLCHARACTER0000REPLACEMENT");
-
-		AtomicValue inputAV = new XdmAtomicValue(tmpinput).getUnderlyingValue();
-		AtomicValue regexAV = new XdmAtomicValue(tmpregex).getUnderlyingValue();
+		return compile(regex, flags).matches(input);
+	}
+	
+	
+	/** Compiles the regular expression with the given flags, following the syntax of XPath 3.1.
+	 * The compiled expressions are kept in a bounded cache shared by all the callers.
+	 * 
+	 * @param regex
+	 * @param flags can be null
+	 * @return the compiled expression
+	 * @throws IllegalArgumentException if the expression is invalid, it is not kept in the cache
+	 */
+	public static CompiledRegex compile(String regex, String flags) {
 		if (flags == null) flags = "";
-		try {
-			return matcher.evalMatches(inputAV, regexAV, flags, context);
-		} catch (XPathException e) {
-			e.printStackTrace();
-			return false;
+		Pair<String,String> key = new Pair<>(regex, flags);
+		CompiledRegex result = regexCache.get(key);
+		if (result == null) {
+			result = new CompiledRegex(regex, flags, javaRegexEnabled);
+			regexCache.put(key, result);
 		}
+		return result;
+	}
+	
+	/** Compiles the regular expression with Saxon only, without using the cache.
+	 * 
+	 * @param regex
+	 * @param flags can be null
+	 * @return the compiled expression
+	 * @throws IllegalArgumentException if the expression is invalid
+	 */
+	public static CompiledRegex compileWithSaxon(String regex, String flags) {
+		return new CompiledRegex(regex, flags == null ? "" : flags, false);
+	}
+	
+	/** Translates the regular expression to a java.util.regex pattern with the same matches.
+	 * 
+	 * @param regex
+	 * @param flags can be null
+	 * @return the pattern, or null if the expression uses a construct whose meaning may differ in java.util.regex
+	 * @see XPathRegexTranslator
+	 */
+	public static Pattern toJavaPattern(String regex, String flags) {
+		return XPathRegexTranslator.translate(regex, flags);
+	}
+	
+	/** Enables or disables the evaluation with java.util.regex of the expressions that can be translated. It is enabled by default.
+	 * Clears the cache of compiled expressions, the holders of a compiled expression can check {@link CompiledRegex#isJavaRegexEnabled()} to compile it again.
+	 * 
+	 * @param enabled
+	 */
+	public static void setJavaRegexEnabled(boolean enabled) {
+		javaRegexEnabled = enabled;
+		regexCache.clear();
+	}
+	
+	public static boolean isJavaRegexEnabled() {
+		return javaRegexEnabled;
+	}
+	
+	
+	/** A regular expression compiled once, that can be used concurrently to test many strings.
+	 * The expression is evaluated with java.util.regex when it can be translated, otherwise with Saxon. 
+	 */
+	public static class CompiledRegex {
+		private final String regex;
+		private final String flags;
+		private final Pattern javaPattern;
+		private final RegularExpression compiled;
+		private final boolean javaRegexEnabled;
+		
+		private CompiledRegex(String regex, String flags, boolean useJava) {
+			this.regex = regex;
+			this.flags = flags;
+			this.javaRegexEnabled = useJava;
+			this.javaPattern = useJava ? toJavaPattern(regex, flags) : null;
+			this.compiled = javaPattern == null ? compileWithSaxon() : null;
+		}
+		
+		private RegularExpression compileWithSaxon() {
+			try {
+				// same options as the fn:matches function of Saxon
+				Configuration config = context.getConfiguration();
+				String hostLanguage = config.getXsdVersion() == Configuration.XSD11 ? "XP30/XSD11" : "XP30";
+				List<String> warnings = new ArrayList<>(1);
+				return config.compileRegularExpression(replaceNullCharacter(regex), flags, hostLanguage, warnings);
+			} catch (XPathException e) {
+				throw new IllegalArgumentException("Invalid regular expression: "+regex+" with flags: "+flags+". "+e.getMessage(), e);
+			}
+		}
+		
+		public boolean matches(String input) {
+			if (javaPattern != null)
+				return javaPattern.matcher(input).find();
+			return compiled.containsMatch(replaceNullCharacter(input));
+		}
+		
+		/** Tests whether the expression is evaluated with java.util.regex. */
+		public boolean isJavaPattern() {
+			return javaPattern != null;
+		}
+		
+		/** Tests whether the evaluation with java.util.regex was allowed when the expression was compiled. */
+		public boolean isJavaRegexEnabled() {
+			return javaRegexEnabled;
+		}
+		
+		public String getRegex() {
+			return regex;
+		}
+		
+		public String getFlags() {
+			return flags;
+		}
+	}
+	
+	// Saxon does not handle the null character, it is replaced in both the regex and the input
+	private static String replaceNullCharacter(String st) {
+		if (st.indexOf('\0') < 0)
+			return st;
+		return st.replace("\0", NULL_CHARACTER_REPLACEMENT);
 	}
 	
 	
@@ -0,0 +1,327 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.util;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/** Translates the XPath 3.1 regular expressions that have the same meaning in java.util.regex.
+ *
+ * The translation is conservative: a construct whose meaning may differ between the two syntaxes makes the translation fail.
+ * Rejected constructs are the flags m and x, the escapes \w, \i, \c and their complements, back-references, block escapes,
+ * character class subtractions and nested classes. With the flag i, only ASCII patterns without negated classes are translated.
+ * The category escapes \p{..}, \P{..}, \d and \D are also rejected: the Unicode tables of java.util.regex come from the running JDK
+ * and can differ from the ones of Saxon on the recently assigned code points.
+ * The other differences are rewritten: . does not match \n and \r, $ only matches at the end of the input, \s uses the XPath definition.
+ */
+class XPathRegexTranslator {
+	private static final String SINGLE_CHAR_ESCAPES = "nrt\\|.?*+(){}-[]^$";
+
+	private final String regex;
+	private final boolean dotAll;
+	private final boolean caseInsensitive;
+	private final StringBuilder result;
+	private int pos;
+
+	private XPathRegexTranslator(String regex, boolean dotAll, boolean caseInsensitive) {
+		this.regex = regex;
+		this.dotAll = dotAll;
+		this.caseInsensitive = caseInsensitive;
+		this.result = new StringBuilder(regex.length() + 16);
+		this.pos = 0;
+	}
+
+
+	/** Translates the regular expression.
+	 *
+	 * @param regex an XPath 3.1 regular expression
+	 * @param flags the XPath flags, can be null
+	 * @return a pattern that has the same matches, or null if the translation is not known to be equivalent
+	 */
+	static Pattern translate(String regex, String flags) {
+		if (flags == null)
+			flags = "";
+		boolean dotAll = false, caseInsensitive = false, literal = false;
+		for (int i = 0; i < flags.length(); i++) {
+			switch (flags.charAt(i)) {
+			case 's': dotAll = true; break;
+			case 'i': caseInsensitive = true; break;
+			case 'q': literal = true; break;
+			default: return null;
+			}
+		}
+		if (regex.indexOf('\0') >= 0)
+			return null;
+		int javaFlags = 0;
+		if (caseInsensitive) {
+			for (int i = 0; i < regex.length(); i++)
+				if (regex.charAt(i) > 0x7F)
+					return null;
+			javaFlags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+		}
+		try {
+			if (literal)
+				return Pattern.compile(regex, javaFlags | Pattern.LITERAL);
+			XPathRegexTranslator translator = new XPathRegexTranslator(regex, dotAll, caseInsensitive);
+			if (!translator.translateRegex())
+				return null;
+			if (dotAll)
+				javaFlags |= Pattern.DOTALL;
+			return Pattern.compile(translator.result.toString(), javaFlags);
+		} catch (PatternSyntaxException e) {
+			// the expression is also invalid for XPath, the error is reported by Saxon
+			return null;
+		}
+	}
+
+
+	private boolean translateRegex() {
+		boolean canQuantify = false;
+		boolean afterQuantifier = false;
+		while (pos < regex.length()) {
+			char c = regex.charAt(pos);
+			switch (c) {
+			case '\\':
+				if (!translateEscape(false))
+					return false;
+				canQuantify = true;
+				afterQuantifier = false;
+				break;
+			case '[':
+				if (!translateClass())
+					return false;
+				canQuantify = true;
+				afterQuantifier = false;
+				break;
+			case '.':
+				result.append(dotAll ? "." : "[^\\n\\r]");
+				pos++;
+				canQuantify = true;
+				afterQuantifier = false;
+				break;
+			case '^':
+				result.append('^');
+				pos++;
+				canQuantify = false;
+				afterQuantifier = false;
+				break;
+			case '$':
+				result.append("\\z");
+				pos++;
+				canQuantify = false;
+				afterQuantifier = false;
+				break;
+			case '(':
+				if (regex.startsWith("(?", pos)) {
+					if (!regex.startsWith("(?:", pos))
+						return false;
+					result.append("(?:");
+					pos += 3;
+				} else {
+					result.append('(');
+					pos++;
+				}
+				canQuantify = false;
+				afterQuantifier = false;
+				break;
+			case ')':
+				result.append(')');
+				pos++;
+				canQuantify = true;
+				afterQuantifier = false;
+				break;
+			case '|':
+				result.append('|');
+				pos++;
+				canQuantify = false;
+				afterQuantifier = false;
+				break;
+			case '*':
+			case '+':
+			case '?':
+				if (afterQuantifier && c == '?') {
+					// reluctant quantifier
+					result.append('?');
+					pos++;
+					afterQuantifier = false;
+					break;
+				}
+				if (!canQuantify)
+					return false;
+				result.append(c);
+				pos++;
+				canQuantify = false;
+				afterQuantifier = true;
+				break;
+			case '{':
+				if (!canQuantify || !translateQuantity())
+					return false;
+				canQuantify = false;
+				afterQuantifier = true;
+				break;
+			case ']':
+			case '}':
+				return false;
+			default:
+				int cp = regex.codePointAt(pos);
+				result.appendCodePoint(cp);
+				pos += Character.charCount(cp);
+				canQuantify = true;
+				afterQuantifier = false;
+			}
+		}
+		return true;
+	}
+
+	// {n}, {n,} or {n,m}
+	private boolean translateQuantity() {
+		int end = regex.indexOf('}', pos);
+		if (end < 0)
+			return false;
+		String quantity = regex.substring(pos + 1, end);
+		if (!quantity.matches("[0-9]+(,[0-9]*)?"))
+			return false;
+		result.append('{').append(quantity).append('}');
+		pos = end + 1;
+		return true;
+	}
+
+	// pos is on the backslash
+	private boolean translateEscape(boolean inClass) {
+		if (pos + 1 >= regex.length())
+			return false;
+		char c = regex.charAt(pos + 1);
+		pos += 2;
+		if (SINGLE_CHAR_ESCAPES.indexOf(c) >= 0) {
+			result.append('\\').append(c);
+			return true;
+		}
+		switch (c) {
+		case 's':
+			result.append(inClass ? " \\t\\n\\r" : "[ \\t\\n\\r]");
+			return true;
+		case 'S':
+			if (inClass || caseInsensitive)
+				return false;
+			result.append("[^ \\t\\n\\r]");
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	// pos is on the opening bracket
+	private boolean translateClass() {
+		pos++;
+		result.append('[');
+		if (pos < regex.length() && regex.charAt(pos) == '^') {
+			if (caseInsensitive)
+				return false;
+			result.append('^');
+			pos++;
+		}
+		boolean first = true;
+		while (pos < regex.length()) {
+			char c = regex.charAt(pos);
+			if (c == ']') {
+				if (first)
+					return false;
+				result.append(']');
+				pos++;
+				return true;
+			}
+			if (c == '[')
+				return false;
+			if (c == '-') {
+				// a hyphen is a character only at the beginning or at the end of the class
+				if (!first && !regex.startsWith("-]", pos))
+					return false;
+				result.append("\\-");
+				pos++;
+				first = false;
+				continue;
+			}
+			first = false;
+			if (c == '\\' && pos + 1 < regex.length() && SINGLE_CHAR_ESCAPES.indexOf(regex.charAt(pos + 1)) < 0) {
+				// multi-character escape, cannot be the bound of a range
+				if (!translateEscape(true))
+					return false;
+				if (regex.startsWith("-", pos) && !regex.startsWith("-]", pos))
+					return false;
+				continue;
+			}
+			int start = classChar();
+			if (start < 0)
+				return false;
+			if (regex.startsWith("-", pos) && !regex.startsWith("-]", pos)) {
+				if (regex.startsWith("-[", pos))
+					// subtraction
+					return false;
+				pos++;
+				if (pos < regex.length() && regex.charAt(pos) == '\\' && pos + 1 < regex.length()
+						&& SINGLE_CHAR_ESCAPES.indexOf(regex.charAt(pos + 1)) < 0)
+					return false;
+				int end = classChar();
+				if (end < 0 || end < start)
+					return false;
+				appendClassChar(start);
+				result.append('-');
+				appendClassChar(end);
+			} else {
+				appendClassChar(start);
+			}
+		}
+		return false;
+	}
+
+	// reads a single character of a class, which can be a single character escape
+	private int classChar() {
+		if (pos >= regex.length())
+			return -1;
+		char c = regex.charAt(pos);
+		if (c == '[' || c == ']')
+			return -1;
+		if (c == '\\') {
+			if (pos + 1 >= regex.length())
+				return -1;
+			char e = regex.charAt(pos + 1);
+			pos += 2;
+			switch (e) {
+			case 'n': return '\n';
+			case 'r': return '\r';
+			case 't': return '\t';
+			default: return e;
+			}
+		}
+		int cp = regex.codePointAt(pos);
+		pos += Character.charCount(cp);
+		return cp;
+	}
+
+	private void appendClassChar(int cp) {
+		switch (cp) {
+		case '\n': result.append("\\n"); break;
+		case '\r': result.append("\\r"); break;
+		case '\t': result.append("\\t"); break;
+		case '\\': case '[': case ']': case '-': case '^': case '&':
+			result.append('\\').append((char) cp);
+			break;
+		default:
+			result.appendCodePoint(cp);
+		}
+	}
+}
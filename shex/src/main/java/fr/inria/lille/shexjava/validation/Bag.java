@@ -16,49 +16,180 @@
  ******************************************************************************/
 package fr.inria.lille.shexjava.validation;
 
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import fr.inria.lille.shexjava.schema.abstrsynt.TripleConstraint;
 
-/**
+/** A bag of triple constraints.
+ * Every triple constraint of the alphabet has a slot, and the multiplicities are stored in an array indexed by the slots,
+ * so that they can be updated and read without allocation.
+ * The alphabet is either fixed when the bag is created, or grows with the triple constraints that are incremented.
  * 
  * @author Iovka Boneva
  * 10 oct. 2017
  */
 public class Bag {
+	public static final int NO_SLOT = -1;
+	private static final int MIN_CAPACITY = 4;
 
-	private Map<TripleConstraint, Integer> theMap;
+	private TripleConstraint[] constraints;
+	private Map<TripleConstraint, Integer> slots;
+	private int[] counts;
+	/** the number of slots of the alphabet */
+	private int size;
+	private final boolean growable;
 
+	/** Creates an empty bag whose alphabet grows with the triple constraints that are incremented. */
 	public Bag(){
-		theMap = new HashMap<>();
+		this.constraints = new TripleConstraint[MIN_CAPACITY];
+		this.slots = new HashMap<>();
+		this.counts = new int[MIN_CAPACITY];
+		this.size = 0;
+		this.growable = true;
 	}
 
+	/** Creates an empty bag over the given alphabet. The slot of a triple constraint is its position in the list.
+	 * 
+	 * @param alphabet the triple constraints, without duplicates
+	 */
+	public Bag(List<TripleConstraint> alphabet){
+		this.constraints = alphabet.toArray(new TripleConstraint[alphabet.size()]);
+		this.slots = new HashMap<>(constraints.length * 2);
+		for (int i = 0; i < constraints.length; i++)
+			slots.put(constraints[i], i);
+		this.counts = new int[constraints.length];
+		this.size = constraints.length;
+		this.growable = false;
+	}
+
+	/** Creates an empty bag that shares the slots of a precomputed alphabet, which must not be modified.
+	 * 
+	 * @param constraints the triple constraints, indexed by slot
+	 * @param slots the slot of every triple constraint of constraints
+	 */
+	Bag(TripleConstraint[] constraints, Map<TripleConstraint, Integer> slots){
+		this.constraints = constraints;
+		this.slots = slots;
+		this.counts = new int[constraints.length];
+		this.size = constraints.length;
+		this.growable = false;
+	}
+
+	/** The slot of the triple constraint, or {@link #NO_SLOT} if it does not belong to the alphabet of the bag. */
+	public int slotOf(TripleConstraint tripleConstraint) {
+		Integer slot = slots.get(tripleConstraint);
+		return slot == null ? NO_SLOT : slot;
+	}
+
+	public void increment(int slot){
+		counts[slot]++;
+	}
+
+	public void decrement(int slot){
+		counts[slot]--;
+	}
+
+	/** Increments the multiplicity of the triple constraint, which is added to the alphabet if the bag was created with {@link #Bag()}. */
 	public void increment(TripleConstraint tripleConstraint){
-		if (theMap.containsKey(tripleConstraint))
-			theMap.put(tripleConstraint, theMap.get(tripleConstraint) + 1);
-		else
-			theMap.put(tripleConstraint, 1);
+		int slot = slotOf(tripleConstraint);
+		if (slot == NO_SLOT) {
+			if (!growable)
+				throw new IllegalArgumentException(tripleConstraint + " does not belong to the alphabet of the bag.");
+			slot = addSlot(tripleConstraint);
+		}
+		counts[slot]++;
+	}
+
+	public int getMult(int slot){
+		return counts[slot];
 	}
 
 	public int getMult(TripleConstraint tripleConstraint){
-		if (theMap.containsKey(tripleConstraint))
-			return theMap.get(tripleConstraint);
-		else 
+		int slot = slotOf(tripleConstraint);
+		if (slot == NO_SLOT)
 			return 0;
+		return counts[slot];
+	}
+
+	/** Sets all the multiplicities to zero. */
+	public void clear() {
+		for (int i = 0; i < size; i++)
+			counts[i] = 0;
 	}
 
+	/** The triple constraints that have a non zero multiplicity. */
 	public Set<TripleConstraint> alphabet() {
-		return Collections.unmodifiableSet(theMap.keySet());
+		return new AbstractSet<TripleConstraint>() {
+			@Override
+			public Iterator<TripleConstraint> iterator() {
+				return new Iterator<TripleConstraint>() {
+					private int next = nextNonZero(0);
+
+					@Override
+					public boolean hasNext() {
+						return next < size;
+					}
+
+					@Override
+					public TripleConstraint next() {
+						if (!hasNext())
+							throw new NoSuchElementException();
+						TripleConstraint result = constraints[next];
+						next = nextNonZero(next+1);
+						return result;
+					}
+				};
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return o instanceof TripleConstraint && getMult((TripleConstraint) o) != 0;
+			}
+
+			@Override
+			public int size() {
+				int result = 0;
+				for (int i = 0; i < size; i++)
+					if (counts[i] != 0)
+						result++;
+				return result;
+			}
+		};
+	}
+
+	private int nextNonZero(int from) {
+		while (from < size && counts[from] == 0)
+			from++;
+		return from;
+	}
+
+	private int addSlot(TripleConstraint tripleConstraint) {
+		if (size == counts.length) {
+			constraints = Arrays.copyOf(constraints, size * 2);
+			counts = Arrays.copyOf(counts, size * 2);
+		}
+		constraints[size] = tripleConstraint;
+		slots.put(tripleConstraint, size);
+		return size++;
 	}
 
 	public String toString(){
-		return "Bag[" + theMap.toString() + "]";
+		return "Bag[" + getMap().toString() + "]";
 	}
 	
 	protected Map<TripleConstraint, Integer> getMap() {
-		return Collections.unmodifiableMap(theMap);
+		Map<TripleConstraint, Integer> map = new HashMap<>();
+		for (int i = 0; i < size; i++)
+			if (counts[i] != 0)
+				map.put(constraints[i], counts[i]);
+		return Collections.unmodifiableMap(map);
 	}
 }
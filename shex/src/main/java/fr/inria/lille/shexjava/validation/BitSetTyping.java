@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.validation;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.commons.rdf.api.RDFTerm;
+
+import fr.inria.lille.shexjava.schema.Label;
+import fr.inria.lille.shexjava.util.Pair;
+import fr.inria.lille.shexjava.util.TermDictionary;
+
+/** An implementation of {@link Typing} that stores, for every label, two bitsets indexed by the id of the nodes in a {@link TermDictionary}.
+ *
+ * The first bitset contains the nodes that have a status for the label, the second one the nodes that are conformant.
+ * This typing fits the algorithms that type all the nodes of the graph, like {@link RefineValidation}:
+ * {@link #getNodes(Label)} is a view on the bitset of the label and {@link #getShapesLabel(RDFTerm)} is computed by testing a bit for every label.
+ */
+public class BitSetTyping implements MutableTyping {
+	private final TermDictionary dictionary;
+	private BitSet[] computed;
+	private BitSet[] conformant;
+
+
+	public BitSetTyping() {
+		this(new TermDictionary());
+	}
+
+	public BitSetTyping(TermDictionary dictionary) {
+		this.dictionary = dictionary;
+		this.computed = new BitSet[0];
+		this.conformant = new BitSet[0];
+	}
+
+
+	public TermDictionary getDictionary() {
+		return dictionary;
+	}
+
+	@Override
+	public void setStatus(RDFTerm node, Label label, Status status) {
+		if (status == Status.NOTCOMPUTED) {
+			removeNodeLabel(node, label);
+			return;
+		}
+		int nodeId = dictionary.getId(node);
+		int labelId = dictionary.getId(label);
+		if (labelId >= computed.length) {
+			int size = Math.max(labelId + 1, computed.length * 2);
+			computed = Arrays.copyOf(computed, size);
+			conformant = Arrays.copyOf(conformant, size);
+		}
+		if (computed[labelId] == null) {
+			computed[labelId] = new BitSet();
+			conformant[labelId] = new BitSet();
+		}
+		computed[labelId].set(nodeId);
+		conformant[labelId].set(nodeId, status == Status.CONFORMANT);
+	}
+
+	@Override
+	public Status getStatus(RDFTerm node, Label label) {
+		int labelId = dictionary.findId(label);
+		if (labelId == TermDictionary.UNKNOWN || labelId >= computed.length || computed[labelId] == null)
+			return Status.NOTCOMPUTED;
+		int nodeId = dictionary.findId(node);
+		if (nodeId == TermDictionary.UNKNOWN || !computed[labelId].get(nodeId))
+			return Status.NOTCOMPUTED;
+		return conformant[labelId].get(nodeId) ? Status.CONFORMANT : Status.NONCONFORMANT;
+	}
+
+	@Override
+	public boolean isConformant(RDFTerm node, Label label) {
+		return getStatus(node, label) == Status.CONFORMANT;
+	}
+
+	@Override
+	public boolean isNonConformant(RDFTerm node, Label label) {
+		return getStatus(node, label) != Status.CONFORMANT;
+	}
+
+	@Override
+	public Set<Label> getShapesLabel(RDFTerm node){
+		Set<Label> result = new HashSet<>();
+		int nodeId = dictionary.findId(node);
+		if (nodeId == TermDictionary.UNKNOWN)
+			return result;
+		for (int labelId = 0; labelId < computed.length; labelId++)
+			if (computed[labelId] != null && computed[labelId].get(nodeId))
+				result.add(dictionary.getLabel(labelId));
+		return result;
+	}
+
+	/** A view of the nodes that have a status for the label. */
+	@Override
+	public Set<RDFTerm> getNodes(Label label){
+		return new NodeSet(label);
+	}
+
+	@Override
+	public void removeNodeLabel(RDFTerm node, Label label) {
+		int labelId = dictionary.findId(label);
+		int nodeId = dictionary.findId(node);
+		if (labelId == TermDictionary.UNKNOWN || nodeId == TermDictionary.UNKNOWN || labelId >= computed.length || computed[labelId] == null)
+			return;
+		computed[labelId].clear(nodeId);
+		conformant[labelId].clear(nodeId);
+	}
+
+	@Override
+	public Map<Pair<RDFTerm, Label>, Status> getStatusMap() {
+		Map<Pair<RDFTerm, Label>, Status> result = new HashMap<>();
+		for (int labelId = 0; labelId < computed.length; labelId++) {
+			if (computed[labelId] == null)
+				continue;
+			Label label = dictionary.getLabel(labelId);
+			for (int nodeId = computed[labelId].nextSetBit(0); nodeId >= 0; nodeId = computed[labelId].nextSetBit(nodeId+1))
+				result.put(new Pair<>(dictionary.getTerm(nodeId), label),
+						   conformant[labelId].get(nodeId) ? Status.CONFORMANT : Status.NONCONFORMANT);
+		}
+		return result;
+	}
+
+
+	private BitSet computedNodes(Label label) {
+		int labelId = dictionary.findId(label);
+		if (labelId == TermDictionary.UNKNOWN || labelId >= computed.length || computed[labelId] == null)
+			return null;
+		return computed[labelId];
+	}
+
+	private class NodeSet extends AbstractSet<RDFTerm> {
+		private final Label label;
+
+		NodeSet(Label label) {
+			this.label = label;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof RDFTerm))
+				return false;
+			return getStatus((RDFTerm) o, label) != Status.NOTCOMPUTED;
+		}
+
+		@Override
+		public int size() {
+			BitSet nodes = computedNodes(label);
+			return nodes == null ? 0 : nodes.cardinality();
+		}
+
+		@Override
+		public Iterator<RDFTerm> iterator() {
+			BitSet nodes = computedNodes(label);
+			return new Iterator<RDFTerm>() {
+				int next = nodes == null ? -1 : nodes.nextSetBit(0);
+
+				@Override
+				public boolean hasNext() {
+					return next >= 0;
+				}
+
+				@Override
+				public RDFTerm next() {
+					if (next < 0)
+						throw new NoSuchElementException();
+					RDFTerm result = dictionary.getTerm(next);
+					next = nodes.nextSetBit(next + 1);
+					return result;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.validation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.inria.lille.shexjava.schema.Label;
+import fr.inria.lille.shexjava.schema.ShexSchema;
+import fr.inria.lille.shexjava.schema.abstrsynt.AbstractNaryTripleExpr;
+import fr.inria.lille.shexjava.schema.abstrsynt.RepeatedTripleExpression;
+import fr.inria.lille.shexjava.schema.abstrsynt.Shape;
+import fr.inria.lille.shexjava.schema.abstrsynt.ShapeExpr;
+import fr.inria.lille.shexjava.schema.abstrsynt.TripleConstraint;
+import fr.inria.lille.shexjava.schema.abstrsynt.TripleExpr;
+import fr.inria.lille.shexjava.schema.abstrsynt.TripleExprRef;
+
+/** The data used by the SORBE based validation algorithms, computed once for all the shapes of a schema.
+ * 
+ * For every {@link Shape} of the schema, contains the SORBE version of its triple expression, the index of its triple constraints by predicate
+ * and the structures used to search the matchings. It also contains the triple constraints of every SORBE sub expression with their slots in the bags of the matching search, and the stratification of the schema.
+ * A compiled schema is immutable and can be shared by any number of validators, on any thread.
+ */
+public class CompiledSchema {
+	private final ShexSchema schema;
+	private final SORBEGenerator generator;
+	private final Map<Label, CompiledShape> shapes;
+	private final Map<Label, List<TripleConstraint>> tripleConstraints;
+	private final Map<Label, int[]> tripleConstraintSlots;
+	private final Map<Integer, Set<Label>> stratification;
+	
+	
+	public CompiledSchema(ShexSchema schema) {
+		this.schema = schema;
+		this.generator = new SORBEGenerator(schema.getRdfFactory());
+		Map<Label, CompiledShape> compiledShapes = new HashMap<>();
+		Map<Label, List<TripleConstraint>> tcs = new HashMap<>();
+		Map<Label, int[]> tcSlots = new HashMap<>();
+		for (ShapeExpr expr:schema.getShapeExprsMap().values()) {
+			if (!(expr instanceof Shape))
+				continue;
+			Shape shape = (Shape) expr;
+			TripleExpr sorbe = generator.getSORBETripleExpr(shape);
+			List<Label> subExprs = new ArrayList<>();
+			collect(sorbe, tcs, subExprs);
+			MatchingSearch search = new MatchingSearch(sorbe);
+			compiledShapes.put(shape.getId(), new CompiledShape(sorbe, new PredicateIndex(tcs.get(sorbe.getId())),
+										search, FlowMatchingSearch.create(sorbe)));
+			// the SORBE sub expressions are copies that belong to a single shape
+			for (Label subExpr:subExprs) {
+				List<TripleConstraint> list = tcs.get(subExpr);
+				int[] slots = new int[list.size()];
+				for (int i = 0; i < slots.length; i++)
+					slots[i] = search.slotOf(list.get(i));
+				tcSlots.put(subExpr, slots);
+			}
+		}
+		this.shapes = Collections.unmodifiableMap(compiledShapes);
+		this.tripleConstraints = Collections.unmodifiableMap(tcs);
+		this.tripleConstraintSlots = Collections.unmodifiableMap(tcSlots);
+		
+		Map<Integer, Set<Label>> strata = new HashMap<>();
+		for (Map.Entry<Integer, Set<Label>> e:schema.getStratification().entrySet())
+			strata.put(e.getKey(), Collections.unmodifiableSet(new HashSet<>(e.getValue())));
+		this.stratification = Collections.unmodifiableMap(strata);
+	}
+	
+	// collects the triple constraints of expr and of all its sub expressions, whose labels are added to subExprs
+	private static List<TripleConstraint> collect(TripleExpr expr, Map<Label, List<TripleConstraint>> tcs, List<Label> subExprs) {
+		List<TripleConstraint> result;
+		if (expr instanceof TripleConstraint) {
+			result = Collections.singletonList((TripleConstraint) expr);
+		} else if (expr instanceof AbstractNaryTripleExpr) {
+			result = new ArrayList<>();
+			for (TripleExpr subExpr:((AbstractNaryTripleExpr) expr).getSubExpressions())
+				result.addAll(collect(subExpr, tcs, subExprs));
+			result = Collections.unmodifiableList(result);
+		} else if (expr instanceof RepeatedTripleExpression) {
+			result = collect(((RepeatedTripleExpression) expr).getSubExpression(), tcs, subExprs);
+		} else if (expr instanceof TripleExprRef) {
+			result = collect(((TripleExprRef) expr).getTripleExp(), tcs, subExprs);
+		} else {
+			result = Collections.emptyList();
+		}
+		tcs.put(expr.getId(), result);
+		subExprs.add(expr.getId());
+		return result;
+	}
+	
+	
+	public ShexSchema getSchema() {
+		return schema;
+	}
+	
+	/** The generator of the SORBE versions of the triple expressions, whose results for the shapes of the schema are the ones of the compiled schema. */
+	SORBEGenerator getSORBEGenerator() {
+		return generator;
+	}
+	
+	/** The SORBE version of the triple expression of the shape. */
+	public TripleExpr getSORBETripleExpr(Shape shape) {
+		return getCompiledShape(shape).sorbe;
+	}
+	
+	/** The index by predicate of the triple constraints of the SORBE version of the triple expression of the shape. */
+	public PredicateIndex getPredicateIndex(Shape shape) {
+		return getCompiledShape(shape).index;
+	}
+	
+	/** The search of matchings for the SORBE version of the triple expression of the shape. */
+	public MatchingSearch getMatchingSearch(Shape shape) {
+		return getCompiledShape(shape).search;
+	}
+	
+	/** The search of matchings by maximum flow for the shape, or null if its SORBE triple expression is not an EachOf of triple constraints. */
+	public FlowMatchingSearch getFlowMatchingSearch(Shape shape) {
+		return getCompiledShape(shape).flowSearch;
+	}
+	
+	/** The triple constraints that appear in an expression of the SORBE version of a triple expression.
+	 * 
+	 * @param sorbeExpression the SORBE version of a triple expression of the schema, or one of its sub expressions
+	 * @return an unmodifiable list
+	 */
+	public List<TripleConstraint> getTripleConstraints(TripleExpr sorbeExpression) {
+		List<TripleConstraint> result = tripleConstraints.get(sorbeExpression.getId());
+		if (result == null)
+			throw new IllegalArgumentException("Unknown triple expression: "+sorbeExpression.getId());
+		return result;
+	}
+	
+	/** The slots of the triple constraints of an expression of the SORBE version of a triple expression, in the bags of the {@link MatchingSearch} of its shape.
+	 * 
+	 * @param sorbeExpression the SORBE version of a triple expression of the schema, or one of its sub expressions
+	 * @return the slots, in the order of {@link #getTripleConstraints(TripleExpr)}, the array must not be modified
+	 */
+	int[] getTripleConstraintSlots(TripleExpr sorbeExpression) {
+		int[] result = tripleConstraintSlots.get(sorbeExpression.getId());
+		if (result == null)
+			throw new IllegalArgumentException("Unknown triple expression: "+sorbeExpression.getId());
+		return result;
+	}
+	
+	/** The stratification of the schema, see {@link ShexSchema#getStratification()}. The map and its sets are unmodifiable. */
+	public Map<Integer, Set<Label>> getStratification() {
+		return stratification;
+	}
+	
+	private CompiledShape getCompiledShape(Shape shape) {
+		CompiledShape result = shapes.get(shape.getId());
+		if (result == null)
+			throw new IllegalArgumentException("Unknown shape: "+shape.getId());
+		return result;
+	}
+	
+	
+	private static class CompiledShape {
+		final TripleExpr sorbe;
+		final PredicateIndex index;
+		final MatchingSearch search;
+		final FlowMatchingSearch flowSearch;
+		
+		CompiledShape(TripleExpr sorbe, PredicateIndex index, MatchingSearch search, FlowMatchingSearch flowSearch) {
+			this.sorbe = sorbe;
+			this.index = index;
+			this.search = search;
+			this.flowSearch = flowSearch;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.validation;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.rdf.api.RDFTerm;
+
+import fr.inria.lille.shexjava.schema.Label;
+import fr.inria.lille.shexjava.util.Pair;
+
+/** A thread-safe implementation of {@link Typing} that can be shared by several validators running concurrently.
+ *
+ * The status are stored by label then by node in concurrent maps, so reading a status neither locks nor allocates.
+ * {@link #publishStatus(RDFTerm, Label, Status)} and {@link #compareAndSetStatus(RDFTerm, Label, Status, Status)} allow to update a status atomically.
+ */
+public class ConcurrentTyping implements MutableTyping {
+	private final ConcurrentHashMap<Label,ConcurrentHashMap<RDFTerm,Status>> statusByLabel;
+	private final ConcurrentHashMap<RDFTerm,Set<Label>> labelsByNode;
+
+
+	public ConcurrentTyping() {
+		statusByLabel = new ConcurrentHashMap<>();
+		labelsByNode = new ConcurrentHashMap<>();
+	}
+
+
+	@Override
+	public void setStatus(RDFTerm node, Label label, Status status) {
+		statusOf(label).put(node, status);
+		labelsOf(node).add(label);
+	}
+
+	/** Sets the status of a pair that has not been computed yet.
+	 *
+	 * @param node
+	 * @param label
+	 * @param status
+	 * @return the status of the pair after the call, which is the previous one if it was already computed
+	 */
+	public Status publishStatus(RDFTerm node, Label label, Status status) {
+		Status previous = statusOf(label).putIfAbsent(node, status);
+		if (previous != null)
+			return previous;
+		labelsOf(node).add(label);
+		return status;
+	}
+
+	/** Atomically sets the status of the pair to newStatus if its current status is expected.
+	 *
+	 * @param node
+	 * @param label
+	 * @param expected the current status, {@link Status#NOTCOMPUTED} if the pair has no status
+	 * @param newStatus
+	 * @return true if the status was updated
+	 */
+	public boolean compareAndSetStatus(RDFTerm node, Label label, Status expected, Status newStatus) {
+		boolean updated;
+		if (expected == Status.NOTCOMPUTED)
+			updated = statusOf(label).putIfAbsent(node, newStatus) == null;
+		else
+			updated = statusOf(label).replace(node, expected, newStatus);
+		if (updated)
+			labelsOf(node).add(label);
+		return updated;
+	}
+
+	@Override
+	public Status getStatus(RDFTerm node, Label label) {
+		Map<RDFTerm,Status> status = statusByLabel.get(label);
+		if (status == null)
+			return Status.NOTCOMPUTED;
+		return status.getOrDefault(node, Status.NOTCOMPUTED);
+	}
+
+	@Override
+	public boolean isConformant(RDFTerm node, Label label) {
+		return getStatus(node, label) == Status.CONFORMANT;
+	}
+
+	@Override
+	public boolean isNonConformant(RDFTerm node, Label label) {
+		return getStatus(node, label) != Status.CONFORMANT;
+	}
+
+	@Override
+	public Set<Label> getShapesLabel(RDFTerm node){
+		Set<Label> labels = labelsByNode.get(node);
+		if (labels == null)
+			return Collections.emptySet();
+		return Collections.unmodifiableSet(labels);
+	}
+
+	@Override
+	public Set<RDFTerm> getNodes(Label label){
+		Map<RDFTerm,Status> status = statusByLabel.get(label);
+		if (status == null)
+			return Collections.emptySet();
+		return Collections.unmodifiableSet(status.keySet());
+	}
+
+	@Override
+	public void removeNodeLabel(RDFTerm node, Label label) {
+		Map<RDFTerm,Status> status = statusByLabel.get(label);
+		if (status != null)
+			status.remove(node);
+		Set<Label> labels = labelsByNode.get(node);
+		if (labels != null)
+			labels.remove(label);
+	}
+
+	/** A snapshot of the status of all the pairs in the typing. */
+	@Override
+	public Map<Pair<RDFTerm, Label>, Status> getStatusMap() {
+		Map<Pair<RDFTerm, Label>, Status> result = new HashMap<>();
+		for (Map.Entry<Label,ConcurrentHashMap<RDFTerm,Status>> byLabel:statusByLabel.entrySet())
+			for (Map.Entry<RDFTerm,Status> entry:byLabel.getValue().entrySet())
+				result.put(new Pair<>(entry.getKey(), byLabel.getKey()), entry.getValue());
+		return result;
+	}
+
+
+	private ConcurrentHashMap<RDFTerm,Status> statusOf(Label label) {
+		ConcurrentHashMap<RDFTerm,Status> status = statusByLabel.get(label);
+		if (status == null)
+			status = statusByLabel.computeIfAbsent(label, l -> new ConcurrentHashMap<>());
+		return status;
+	}
+
+	private Set<Label> labelsOf(RDFTerm node) {
+		Set<Label> labels = labelsByNode.get(node);
+		if (labels == null)
+			labels = labelsByNode.computeIfAbsent(node, n -> ConcurrentHashMap.newKeySet());
+		return labels;
+	}
+}
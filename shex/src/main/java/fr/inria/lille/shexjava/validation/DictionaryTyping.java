@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.validation;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.rdf.api.RDFTerm;
+
+import fr.inria.lille.shexjava.schema.Label;
+import fr.inria.lille.shexjava.util.LongObjectHashMap;
+import fr.inria.lille.shexjava.util.Pair;
+import fr.inria.lille.shexjava.util.TermDictionary;
+
+/** An implementation of {@link Typing} where the pairs (node, label) are encoded by a {@link TermDictionary}.
+ *
+ * The status are stored in a map with primitive long keys, so the lookup of a status does not allocate.
+ * {@link #getNodes(Label)} and {@link #getShapesLabel(RDFTerm)} are computed by a scan of the typing: this typing fits the algorithms that check the status of given pairs, like {@link RecursiveValidationWithMemorization}.
+ */
+public class DictionaryTyping implements MutableTyping {
+	private final TermDictionary dictionary;
+	private final LongObjectHashMap<Status> status;
+
+
+	public DictionaryTyping(TermDictionary dictionary) {
+		this.dictionary = dictionary;
+		this.status = new LongObjectHashMap<>();
+	}
+
+
+	public TermDictionary getDictionary() {
+		return dictionary;
+	}
+
+	@Override
+	public void setStatus(RDFTerm node, Label label, Status status) {
+		this.status.put(dictionary.getKey(node, label), status);
+	}
+
+	/** Sets the status of the pair with the given key in the dictionary of the typing. */
+	public void setStatus(long key, Status status) {
+		this.status.put(key, status);
+	}
+
+	@Override
+	public Status getStatus(RDFTerm node, Label label) {
+		long key = dictionary.findKey(node, label);
+		if (key == Long.MIN_VALUE)
+			return Status.NOTCOMPUTED;
+		return getStatus(key);
+	}
+
+	/** The status of the pair with the given key in the dictionary of the typing. */
+	public Status getStatus(long key) {
+		return status.getOrDefault(key, Status.NOTCOMPUTED);
+	}
+
+	@Override
+	public boolean isConformant(RDFTerm node, Label label) {
+		return getStatus(node, label) == Status.CONFORMANT;
+	}
+
+	@Override
+	public boolean isNonConformant(RDFTerm node, Label label) {
+		return getStatus(node, label) != Status.CONFORMANT;
+	}
+
+	@Override
+	public Set<Label> getShapesLabel(RDFTerm node){
+		Set<Label> result = new HashSet<>();
+		int nodeId = dictionary.findId(node);
+		if (nodeId != TermDictionary.UNKNOWN)
+			status.forEach((key, st) -> {
+				if (TermDictionary.nodeId(key) == nodeId)
+					result.add(dictionary.getLabelOfKey(key));
+			});
+		return result;
+	}
+
+	@Override
+	public Set<RDFTerm> getNodes(Label label){
+		Set<RDFTerm> result = new HashSet<>();
+		int labelId = dictionary.findId(label);
+		if (labelId != TermDictionary.UNKNOWN)
+			status.forEach((key, st) -> {
+				if (TermDictionary.labelId(key) == labelId)
+					result.add(dictionary.getTermOfKey(key));
+			});
+		return result;
+	}
+
+	@Override
+	public void removeNodeLabel(RDFTerm node, Label label) {
+		long key = dictionary.findKey(node, label);
+		if (key != Long.MIN_VALUE)
+			status.remove(key);
+	}
+
+	@Override
+	public Map<Pair<RDFTerm, Label>, Status> getStatusMap() {
+		Map<Pair<RDFTerm, Label>, Status> result = new HashMap<>();
+		status.forEach((key, st) -> result.put(dictionary.unpack(key), st));
+		return result;
+	}
+}
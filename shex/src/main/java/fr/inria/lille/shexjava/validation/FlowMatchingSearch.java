@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.validation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.rdf.api.Triple;
+import org.jgrapht.alg.flow.EdmondsKarpMFImpl;
+import org.jgrapht.alg.interfaces.MaximumFlowAlgorithm;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleDirectedWeightedGraph;
+
+import fr.inria.lille.shexjava.schema.abstrsynt.EachOf;
+import fr.inria.lille.shexjava.schema.abstrsynt.RepeatedTripleExpression;
+import fr.inria.lille.shexjava.schema.abstrsynt.TripleConstraint;
+import fr.inria.lille.shexjava.schema.abstrsynt.TripleExpr;
+import fr.inria.lille.shexjava.util.Interval;
+
+/** Searches a matching for a SORBE triple expression that is an {@link EachOf} of triple constraints, possibly with a cardinality.
+ * 
+ * For such expressions, a bag belongs to the expression if and only if every triple constraint is matched a number of times in its cardinality,
+ * and a matching is a flow in the bipartite graph between the triples and the triple constraints.
+ * The matching is computed with a maximum flow algorithm in polynomial time: 
+ * s gives one unit to every triple, every triple gives one unit to one of its candidate constraints, 
+ * and the constraint c gives between min(c) and max(c) units to t.
+ * The lower bounds are removed with the usual reduction to a maximum flow between a new source and a new sink.
+ * 
+ * Use {@link #create(TripleExpr)} to check whether the expression can be handled. The instances are immutable.
+ */
+public class FlowMatchingSearch {
+	// the source and the sink of the reduction
+	private static final int SOURCE = 0;
+	private static final int SINK = 1;
+	// the source and the sink of the flow with lower bounds
+	private static final int S = 2;
+	private static final int T = 3;
+	private static final int FIRST_NODE = 4;
+	
+	private final Map<TripleConstraint, Integer> slots;
+	private final TripleConstraint[] constraints;
+	private final int[] min;
+	private final int[] max;
+	
+	private FlowMatchingSearch(List<TripleConstraint> constraints, List<Interval> cardinalities) {
+		int size = constraints.size();
+		this.constraints = constraints.toArray(new TripleConstraint[size]);
+		this.slots = new HashMap<>(size * 2);
+		this.min = new int[size];
+		this.max = new int[size];
+		for (int i = 0; i < size; i++) {
+			slots.put(this.constraints[i], i);
+			min[i] = cardinalities.get(i).min;
+			max[i] = cardinalities.get(i).max;
+		}
+	}
+	
+	/** Creates the search for an expression if it is an {@link EachOf} of triple constraints. Nested {@link EachOf}s are flattened.
+	 * 
+	 * @param sorbeExpression a SORBE triple expression
+	 * @return the search, or null if the expression cannot be handled
+	 */
+	public static FlowMatchingSearch create(TripleExpr sorbeExpression) {
+		if (!(sorbeExpression instanceof EachOf))
+			return null;
+		List<TripleConstraint> constraints = new ArrayList<>();
+		List<Interval> cardinalities = new ArrayList<>();
+		if (!collect(sorbeExpression, constraints, cardinalities))
+			return null;
+		return new FlowMatchingSearch(constraints, cardinalities);
+	}
+	
+	private static boolean collect(TripleExpr expr, List<TripleConstraint> constraints, List<Interval> cardinalities) {
+		if (expr instanceof TripleConstraint) {
+			constraints.add((TripleConstraint) expr);
+			cardinalities.add(Interval.ONE);
+			return true;
+		}
+		if (expr instanceof RepeatedTripleExpression) {
+			RepeatedTripleExpression repeated = (RepeatedTripleExpression) expr;
+			if (!(repeated.getSubExpression() instanceof TripleConstraint))
+				return false;
+			constraints.add((TripleConstraint) repeated.getSubExpression());
+			cardinalities.add(repeated.getCardinality());
+			return true;
+		}
+		if (expr instanceof EachOf) {
+			for (TripleExpr subExpr:((EachOf) expr).getSubExpressions())
+				if (!collect(subExpr, constraints, cardinalities))
+					return false;
+			return true;
+		}
+		return false;
+	}
+	
+	
+	/** Searches a matching of the triples of the pre-matching. The unmatched triples and the triples matched to extra are ignored.
+	 * 
+	 * @param preMatching the candidate triple constraints of every triple, which must belong to the expression
+	 * @return the triple constraint matched by every triple, or null if there is no matching
+	 */
+	public Map<Triple, TripleConstraint> findMatching(PreMatching preMatching) {
+		Map<Triple, List<TripleConstraint>> candidates = preMatching.getPreMatching();
+		int n = candidates.size();
+		int sumMin = 0;
+		for (int i = 0; i < min.length; i++)
+			sumMin += min[i];
+		if (sumMin > n)
+			return null;
+		if (n == 0)
+			return new HashMap<>();
+		
+		// the vertices are SOURCE, SINK, S, T, the triples then the constraints
+		SimpleDirectedWeightedGraph<Integer, DefaultWeightedEdge> network = new SimpleDirectedWeightedGraph<>(DefaultWeightedEdge.class);
+		for (int v = 0; v < FIRST_NODE + n + constraints.length; v++)
+			network.addVertex(v);
+		int firstConstraint = FIRST_NODE + n;
+		
+		Triple[] triples = new Triple[n];
+		List<DefaultWeightedEdge> tripleEdges = new ArrayList<>();
+		int node = FIRST_NODE;
+		for (Map.Entry<Triple, List<TripleConstraint>> e:candidates.entrySet()) {
+			triples[node - FIRST_NODE] = e.getKey();
+			// S -> triple with lower and upper bound 1
+			addEdge(network, SOURCE, node, 1);
+			for (TripleConstraint tc:e.getValue()) {
+				Integer slot = slots.get(tc);
+				if (slot == null)
+					throw new IllegalArgumentException(tc + " does not belong to the expression.");
+				tripleEdges.add(addEdge(network, node, firstConstraint + slot, 1));
+			}
+			node++;
+		}
+		addEdge(network, S, SINK, n);
+		for (int i = 0; i < constraints.length; i++) {
+			int upper = max[i] == Interval.UNBOUND ? n : Math.min(max[i], n);
+			// constraint -> T with lower bound min and upper bound max
+			if (upper > min[i])
+				addEdge(network, firstConstraint + i, T, upper - min[i]);
+			if (min[i] > 0)
+				addEdge(network, firstConstraint + i, SINK, min[i]);
+		}
+		if (sumMin > 0)
+			addEdge(network, SOURCE, T, sumMin);
+		addEdge(network, T, S, n);
+		
+		MaximumFlowAlgorithm<Integer, DefaultWeightedEdge> flowAlgorithm = new EdmondsKarpMFImpl<>(network);
+		double value = flowAlgorithm.getMaximumFlowValue(SOURCE, SINK);
+		if (Math.round(value) < n + sumMin)
+			return null;
+		
+		Map<DefaultWeightedEdge, Double> flow = flowAlgorithm.getFlowMap();
+		Map<Triple, TripleConstraint> result = new HashMap<>(n * 2);
+		for (DefaultWeightedEdge edge:tripleEdges) {
+			if (flow.get(edge) > 0.5) {
+				int tripleNode = network.getEdgeSource(edge);
+				int constraintNode = network.getEdgeTarget(edge);
+				result.put(triples[tripleNode - FIRST_NODE], constraints[constraintNode - firstConstraint]);
+			}
+		}
+		return result;
+	}
+	
+	private static DefaultWeightedEdge addEdge(SimpleDirectedWeightedGraph<Integer, DefaultWeightedEdge> network, int source, int target, double capacity) {
+		DefaultWeightedEdge edge = network.addEdge(source, target);
+		network.setEdgeWeight(edge, capacity);
+		return edge;
+	}
+}
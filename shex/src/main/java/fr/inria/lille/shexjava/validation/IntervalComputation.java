@@ -17,6 +17,7 @@
 package fr.inria.lille.shexjava.validation;
 
 import java.util.List;
+import java.util.function.Function;
 
 import fr.inria.lille.shexjava.schema.abstrsynt.EachOf;
 import fr.inria.lille.shexjava.schema.abstrsynt.EmptyTripleExpression;
@@ -40,11 +41,24 @@ import fr.inria.lille.shexjava.util.Interval;
  */
 public class IntervalComputation extends TripleExpressionVisitor<Interval>{	
 	private Interval result;
-	private DynamicCollectorOfTripleConstraints collectorTC;
+	private Function<TripleExpr, List<TripleConstraint>> collectorTC;
+	// null if the multiplicities are read by triple constraint
+	private CompiledSchema compiledSchema;
 	
 	public IntervalComputation(DynamicCollectorOfTripleConstraints collectorTC) {
 		super();
-		this.collectorTC=collectorTC;
+		this.collectorTC=collectorTC::getTCs;
+	}
+	
+	/** Uses the triple constraints and their slots precomputed in the compiled schema, the multiplicities are read by slot. 
+	 * The expressions must be SORBE expressions of the compiled schema, and the bags must be the ones of the {@link MatchingSearch} of their shape.
+	 * 
+	 * @param compiledSchema
+	 */
+	public IntervalComputation(CompiledSchema compiledSchema) {
+		super();
+		this.collectorTC=compiledSchema::getTripleConstraints;
+		this.compiledSchema=compiledSchema;
 	}
 	
 	@Override
@@ -56,7 +70,7 @@ public class IntervalComputation extends TripleExpressionVisitor<Interval>{
 	public void visitTripleConstraint(TripleConstraint tc, Object... arguments) {
 		Bag bag = (Bag) (arguments[0]);
 		
-		int nbOcc = bag.getMult(tc);
+		int nbOcc = getMult(bag, tc);
 		this.result = new Interval(nbOcc, nbOcc);
 	}
 
@@ -124,7 +138,7 @@ public class IntervalComputation extends TripleExpressionVisitor<Interval>{
 
 		else if (subExpr instanceof TripleConstraint) {
 			TripleConstraint tc = (TripleConstraint)  subExpr;
-			int nbOcc = bag.getMult(tc);
+			int nbOcc = getMult(bag, tc);
 			this.result = div(nbOcc, card);
 		}
 
@@ -150,8 +164,21 @@ public class IntervalComputation extends TripleExpressionVisitor<Interval>{
 	}
 	
 	
+	private int getMult(Bag bag, TripleConstraint tc) {
+		if (compiledSchema == null)
+			return bag.getMult(tc);
+		return bag.getMult(compiledSchema.getTripleConstraintSlots(tc)[0]);
+	}
+	
 	private boolean isEmptySubbag(Bag bag, TripleExpr expression){
-		List<TripleConstraint> list = this.collectorTC.getTCs(expression);
+		if (compiledSchema != null) {
+			for (int slot : compiledSchema.getTripleConstraintSlots(expression)) {
+				if (bag.getMult(slot) != 0)
+					return false;
+			}
+			return true;
+		}
+		List<TripleConstraint> list = this.collectorTC.apply(expression);
 		for(TripleConstraint tripleConstraint : list){
 			if(bag.getMult(tripleConstraint) != 0)
 				return false;
@@ -206,6 +233,8 @@ public class IntervalComputation extends TripleExpressionVisitor<Interval>{
 	}
 
 	private Interval add (Interval i1, Interval i2) {
+		if (i1.equals(Interval.EMPTY) || i2.equals(Interval.EMPTY))
+			return Interval.EMPTY;
 		int imin, imax;
 
 		imin = i1.min + i2.min;
@@ -1,11 +1,15 @@
 package fr.inria.lille.shexjava.validation;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 import org.apache.commons.rdf.api.Triple;
 
 import fr.inria.lille.shexjava.schema.Label;
+import fr.inria.lille.shexjava.schema.abstrsynt.TripleConstraint;
 import fr.inria.lille.shexjava.util.Pair;
 
 /** Data structure. 
@@ -20,6 +24,8 @@ public class LocalMatching {
 	// TODO having null for the matching to indicate that there is no matching is not satisfactory
 
 	private Map<Triple, Label> matching;
+	private Map<Triple, TripleConstraint> matchedConstraints;
+	private Function<TripleConstraint, Label> labelOfConstraint;
 	private List<Triple> unmatched;
 	private List<Triple> matchedToExtra;	
 	
@@ -28,11 +34,49 @@ public class LocalMatching {
 		this.matchedToExtra = matchedToExtra;
 		this.unmatched = unmatched;
 	}
+	
+	/** A matching given by the triple constraints matched by the triples. The map of labels returned by {@link #getMatching()} is computed only when this method is called.
+	 * 
+	 * @param matchedConstraints with every matched triple associates its triple constraint, must not be modified afterwards
+	 * @param labelOfConstraint the label of a triple constraint in the matching
+	 * @param matchedToExtra
+	 * @param unmatched
+	 * @return the local matching
+	 */
+	public static LocalMatching lazy (Map<Triple, TripleConstraint> matchedConstraints, Function<TripleConstraint, Label> labelOfConstraint, 
+									  List<Triple> matchedToExtra, List<Triple> unmatched) {
+		LocalMatching result = new LocalMatching(null, matchedToExtra, unmatched);
+		result.matchedConstraints = matchedConstraints;
+		result.labelOfConstraint = labelOfConstraint;
+		return result;
+	}
 
 
 	public final Map<Triple, Label> getMatching() {
+		if (matching == null && matchedConstraints != null) {
+			Map<Triple, Label> labels = new HashMap<>(matchedConstraints.size() * 2);
+			for (Map.Entry<Triple, TripleConstraint> e:matchedConstraints.entrySet())
+				labels.put(e.getKey(), labelOfConstraint.apply(e.getValue()));
+			matching = labels;
+		}
 		return matching;
 	}
+	
+	/** Tests whether a matching was found, without computing it. */
+	public final boolean hasMatching() {
+		return matching != null || matchedConstraints != null;
+	}
+	
+	/** With every matched triple associates the triple constraint that it matches. 
+	 * The triple constraints are those used by the validation algorithm, that can be copies of the triple constraints of the schema with the same shape expression.
+	 * 
+	 * @return an unmodifiable map, or null if there is no matching or if the matching was given by labels only
+	 */
+	public final Map<Triple, TripleConstraint> getMatchedConstraints() {
+		if (matchedConstraints == null)
+			return null;
+		return Collections.unmodifiableMap(matchedConstraints);
+	}
 
 	public final List<Triple> getUnmatched() {
 		return unmatched;
@@ -22,16 +22,38 @@ import java.util.Map;
 import org.apache.commons.rdf.api.RDFTerm;
 
 import fr.inria.lille.shexjava.schema.Label;
+import fr.inria.lille.shexjava.util.LongObjectHashMap;
 import fr.inria.lille.shexjava.util.Pair;
+import fr.inria.lille.shexjava.util.TermDictionary;
 
 public class MatchingCollector {
 	private Map<Pair<RDFTerm, Label>, LocalMatching> matchings;
+	private TermDictionary dictionary;
+	private LongObjectHashMap<LocalMatching> encodedMatchings;
 
 	public MatchingCollector() {
 		matchings = new HashMap<>();
 	}
 	
+	/** The matchings are stored with the keys of the pairs (node, label) in the dictionary. 
+	 * 
+	 * @param dictionary
+	 */
+	public MatchingCollector(TermDictionary dictionary) {
+		this.dictionary = dictionary;
+		this.encodedMatchings = new LongObjectHashMap<>();
+	}
+	
 	public void updateMatching (RDFTerm node, Label label, LocalMatching matching) {
+		if (dictionary != null) {
+			if (matching == null) {
+				long key = dictionary.findKey(node, label);
+				if (key != Long.MIN_VALUE)
+					encodedMatchings.remove(key);
+			} else
+				encodedMatchings.put(dictionary.getKey(node, label), matching);
+			return;
+		}
 		Pair<RDFTerm, Label> key = new Pair<>(node, label);
 		if (matching == null && matchings.containsKey(key))
 			matchings.remove(key);
@@ -40,12 +62,22 @@ public class MatchingCollector {
 	}
 	
 	public LocalMatching getMatching (RDFTerm node, Label label) {
+		if (dictionary != null) {
+			long key = dictionary.findKey(node, label);
+			return key == Long.MIN_VALUE ? null : encodedMatchings.get(key);
+		}
 		return matchings.get(new Pair<>(node, label));
 	}
 	
 	
 
+	/** The map of the matchings, which is a copy if the collector uses a dictionary. */
 	public Map<Pair<RDFTerm, Label>, LocalMatching> getMatchingMap() {
+		if (dictionary != null) {
+			Map<Pair<RDFTerm, Label>, LocalMatching> result = new HashMap<>();
+			encodedMatchings.forEach((key, matching) -> result.put(dictionary.unpack(key), matching));
+			return result;
+		}
 		return matchings;
 	}
 
@@ -0,0 +1,327 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.validation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.rdf.api.Triple;
+
+import fr.inria.lille.shexjava.schema.abstrsynt.EachOf;
+import fr.inria.lille.shexjava.schema.abstrsynt.EmptyTripleExpression;
+import fr.inria.lille.shexjava.schema.abstrsynt.OneOf;
+import fr.inria.lille.shexjava.schema.abstrsynt.RepeatedTripleExpression;
+import fr.inria.lille.shexjava.schema.abstrsynt.TripleConstraint;
+import fr.inria.lille.shexjava.schema.abstrsynt.TripleExpr;
+import fr.inria.lille.shexjava.schema.abstrsynt.TripleExprRef;
+import fr.inria.lille.shexjava.schema.analysis.TripleExpressionVisitor;
+import fr.inria.lille.shexjava.util.Interval;
+
+/** Searches a matching of the triples of a pre-matching with the triple constraints of a SORBE triple expression.
+ * 
+ * The triples are assigned one after the other and a partial assignment is abandoned as soon as it cannot be extended to a bag of the expression:
+ * - a triple constraint is matched more times than allowed by the expression, that is once if it is not under a * or + repetition and never if it is under a {0} repetition;
+ * - two branches of a {@link OneOf} that is not under a * or + repetition are used;
+ * - a triple constraint that appears in every bag of the expression, because it is reachable from the root through {@link EachOf}s and + repetitions only, 
+ * is not matched and no remaining triple can match it.
+ * The complete assignments are checked with the {@link IntervalComputation}. 
+ * 
+ * The analysis of the expression is done once in the constructor, then the search can be used concurrently.
+ */
+public class MatchingSearch {
+	private static final int UNBOUNDED = Integer.MAX_VALUE;
+	private static final int CONTROL_PERIOD = 256;
+	
+	private final TripleExpr expression;
+	private final TripleConstraint[] constraints;
+	private final Map<TripleConstraint, Integer> slots;
+	/** maxOccurrences[s] is the maximal number of triples that can match the constraint of slot s */
+	private final int[] maxOccurrences;
+	/** mandatory[s] is true if the constraint of slot s is matched in every bag of the expression */
+	private final boolean[] mandatory;
+	/** exclusiveBranches[s] contains the pairs (group, branch) of the OneOfs whose branch must be used exclusively if s is matched */
+	private final int[][] exclusiveBranches;
+	private final int nbGroups;
+	
+	public MatchingSearch(TripleExpr sorbeExpression) {
+		this.expression = sorbeExpression;
+		Analyser analyser = new Analyser();
+		sorbeExpression.accept(analyser, new State(false, false, true, new int[0]));
+		int size = analyser.tcs.size();
+		this.constraints = analyser.tcs.toArray(new TripleConstraint[size]);
+		this.slots = new HashMap<>(size * 2);
+		this.maxOccurrences = new int[size];
+		this.mandatory = new boolean[size];
+		this.exclusiveBranches = new int[size][];
+		for (int i = 0; i < size; i++) {
+			slots.put(constraints[i], i);
+			State state = analyser.states.get(i);
+			maxOccurrences[i] = state.zero ? 0 : state.repeated ? UNBOUNDED : 1;
+			mandatory[i] = state.mandatory;
+			exclusiveBranches[i] = state.branches;
+		}
+		this.nbGroups = analyser.nbGroups;
+	}
+	
+	
+	/** The slot of the triple constraint in the bags used by the search, or {@link Bag#NO_SLOT} if it does not belong to the expression. */
+	int slotOf(TripleConstraint tc) {
+		Integer slot = slots.get(tc);
+		return slot == null ? Bag.NO_SLOT : slot;
+	}
+	
+	
+	/** Searches a matching of the triples of the pre-matching. The unmatched triples and the triples matched to extra are ignored.
+	 * 
+	 * @param preMatching the candidate triple constraints of every triple, which must belong to the expression
+	 * @param intervalComputation used to check the complete assignments
+	 * @param controller called regularly during the search, can be null
+	 * @return the triple constraint matched by every triple, or null if there is no matching
+	 * @throws Exception if the controller stops the computation
+	 */
+	public Map<Triple, TripleConstraint> findMatching(PreMatching preMatching, IntervalComputation intervalComputation, ComputationController controller) throws Exception {
+		Map<Triple, List<TripleConstraint>> candidates = preMatching.getPreMatching();
+		int n = candidates.size();
+		Triple[] triples = new Triple[n];
+		int[][] tripleSlots = new int[n][];
+		int pos = 0;
+		for (Map.Entry<Triple, List<TripleConstraint>> e:candidates.entrySet()) {
+			List<TripleConstraint> tcs = e.getValue();
+			if (tcs.isEmpty())
+				return null;
+			int[] s = new int[tcs.size()];
+			for (int j = 0; j < s.length; j++) {
+				Integer slot = slots.get(tcs.get(j));
+				if (slot == null)
+					throw new IllegalArgumentException(tcs.get(j) + " does not belong to the expression.");
+				s[j] = slot;
+			}
+			triples[pos] = e.getKey();
+			tripleSlots[pos] = s;
+			pos++;
+		}
+		
+		// The triples with the fewest candidates are assigned first
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		Arrays.sort(order, Comparator.comparingInt(i -> tripleSlots[i].length));
+		int[][] cand = new int[n][];
+		for (int i = 0; i < n; i++)
+			cand[i] = tripleSlots[order[i]];
+		
+		// closing[i] contains the mandatory constraints that cannot be matched by a triple after i 
+		int[] lastCandidate = new int[constraints.length];
+		Arrays.fill(lastCandidate, -1);
+		for (int i = 0; i < n; i++)
+			for (int slot:cand[i])
+				lastCandidate[slot] = i;
+		int[] nbClosing = new int[n];
+		for (int slot = 0; slot < constraints.length; slot++) {
+			if (!mandatory[slot])
+				continue;
+			if (lastCandidate[slot] < 0)
+				return null;
+			nbClosing[lastCandidate[slot]]++;
+		}
+		int[][] closing = new int[n][];
+		for (int i = 0; i < n; i++)
+			closing[i] = new int[nbClosing[i]];
+		for (int slot = 0; slot < constraints.length; slot++)
+			if (mandatory[slot])
+				closing[lastCandidate[slot]][--nbClosing[lastCandidate[slot]]] = slot;
+		
+		Bag bag = new Bag(constraints, slots);
+		int[] groupBranch = new int[nbGroups];
+		int[] groupCount = new int[nbGroups];
+		int[] choice = new int[n+1];
+		long steps = 0;
+		int i = 0;
+		choice[0] = -1;
+		while (i >= 0) {
+			if (controller != null && ++steps % CONTROL_PERIOD == 0)
+				controller.canContinue();
+			if (i == n) {
+				expression.accept(intervalComputation, bag);
+				if (intervalComputation.getResult().contains(1)) {
+					Map<Triple, TripleConstraint> result = new HashMap<>(n * 2);
+					for (int k = 0; k < n; k++)
+						result.put(triples[order[k]], constraints[cand[k][choice[k]]]);
+					return result;
+				}
+				i--;
+				continue;
+			}
+			int[] c = cand[i];
+			if (choice[i] >= 0)
+				unassign(c[choice[i]], bag, groupCount);
+			int next = choice[i] + 1;
+			while (next < c.length && !canAssign(c[next], bag, groupBranch, groupCount))
+				next++;
+			if (next == c.length) {
+				i--;
+				continue;
+			}
+			assign(c[next], bag, groupBranch, groupCount);
+			choice[i] = next;
+			if (isClosingSatisfied(closing[i], bag)) {
+				i++;
+				choice[i] = -1;
+			}
+		}
+		return null;
+	}
+	
+	
+	/** Checks whether the unique assignment of a pre-matching in which every triple has a single candidate is a matching.
+	 * 
+	 * @param preMatching a pre-matching such that {@link PreMatching#hasSingleCandidates()}
+	 * @param intervalComputation used to check the assignment
+	 * @return true if the assignment is a matching
+	 */
+	public boolean isMatching(PreMatching preMatching, IntervalComputation intervalComputation) {
+		Bag bag = new Bag(constraints, slots);
+		for (List<TripleConstraint> tcs:preMatching.getPreMatching().values()) {
+			if (tcs.size() != 1)
+				throw new IllegalArgumentException("Every triple must have a single candidate.");
+			int slot = bag.slotOf(tcs.get(0));
+			if (slot == Bag.NO_SLOT)
+				throw new IllegalArgumentException(tcs.get(0) + " does not belong to the expression.");
+			if (bag.getMult(slot) >= maxOccurrences[slot])
+				return false;
+			bag.increment(slot);
+		}
+		expression.accept(intervalComputation, bag);
+		return intervalComputation.getResult().contains(1);
+	}
+	
+	
+	private boolean canAssign(int slot, Bag bag, int[] groupBranch, int[] groupCount) {
+		if (bag.getMult(slot) >= maxOccurrences[slot])
+			return false;
+		int[] branches = exclusiveBranches[slot];
+		for (int k = 0; k < branches.length; k += 2)
+			if (groupCount[branches[k]] > 0 && groupBranch[branches[k]] != branches[k+1])
+				return false;
+		return true;
+	}
+	
+	private void assign(int slot, Bag bag, int[] groupBranch, int[] groupCount) {
+		bag.increment(slot);
+		int[] branches = exclusiveBranches[slot];
+		for (int k = 0; k < branches.length; k += 2) {
+			groupBranch[branches[k]] = branches[k+1];
+			groupCount[branches[k]]++;
+		}
+	}
+	
+	private void unassign(int slot, Bag bag, int[] groupCount) {
+		bag.decrement(slot);
+		int[] branches = exclusiveBranches[slot];
+		for (int k = 0; k < branches.length; k += 2)
+			groupCount[branches[k]]--;
+	}
+	
+	private boolean isClosingSatisfied(int[] closing, Bag bag) {
+		for (int slot:closing)
+			if (bag.getMult(slot) == 0)
+				return false;
+		return true;
+	}
+	
+	
+	/** The context of a sub expression. */
+	private static class State {
+		final boolean repeated;
+		final boolean zero;
+		final boolean mandatory;
+		final int[] branches;
+		
+		State(boolean repeated, boolean zero, boolean mandatory, int[] branches) {
+			this.repeated = repeated;
+			this.zero = zero;
+			this.mandatory = mandatory;
+			this.branches = branches;
+		}
+	}
+	
+	private static class Analyser extends TripleExpressionVisitor<Void> {
+		private final List<TripleConstraint> tcs = new ArrayList<>();
+		private final List<State> states = new ArrayList<>();
+		private int nbGroups = 0;
+
+		@Override
+		public Void getResult() {
+			return null;
+		}
+
+		@Override
+		public void visitTripleConstraint(TripleConstraint tc, Object... arguments) {
+			tcs.add(tc);
+			states.add((State) arguments[0]);
+		}
+
+		@Override
+		public void visitEmpty(EmptyTripleExpression expr, Object[] arguments) {
+		}
+
+		@Override
+		public void visitEachOf(EachOf expr, Object... arguments) {
+			for (TripleExpr subExpr:expr.getSubExpressions())
+				subExpr.accept(this, arguments);
+		}
+
+		@Override
+		public void visitOneOf(OneOf expr, Object... arguments) {
+			State state = (State) arguments[0];
+			List<TripleExpr> subExprs = expr.getSubExpressions();
+			// a OneOf has at least two sub expressions, none of them is mandatory
+			if (state.repeated) {
+				State subState = new State(true, state.zero, false, state.branches);
+				for (TripleExpr subExpr:subExprs)
+					subExpr.accept(this, subState);
+				return;
+			}
+			int group = nbGroups++;
+			for (int b = 0; b < subExprs.size(); b++) {
+				int[] branches = Arrays.copyOf(state.branches, state.branches.length + 2);
+				branches[branches.length - 2] = group;
+				branches[branches.length - 1] = b;
+				subExprs.get(b).accept(this, new State(false, state.zero, false, branches));
+			}
+		}
+
+		@Override
+		public void visitRepeated(RepeatedTripleExpression expr, Object[] arguments) {
+			State state = (State) arguments[0];
+			Interval card = expr.getCardinality();
+			boolean repeated = state.repeated || card.max == Interval.UNBOUND || card.max > 1;
+			boolean zero = state.zero || card.max == 0;
+			boolean mandatory = state.mandatory && card.min > 0;
+			expr.getSubExpression().accept(this, new State(repeated, zero, mandatory, state.branches));
+		}
+
+		@Override
+		public void visitTripleExprReference(TripleExprRef expr, Object... arguments) {
+			expr.getTripleExp().accept(this, arguments);
+		}
+	}
+}
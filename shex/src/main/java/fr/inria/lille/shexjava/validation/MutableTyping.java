@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.validation;
+
+import java.util.Set;
+
+import org.apache.commons.rdf.api.RDFTerm;
+
+import fr.inria.lille.shexjava.schema.Label;
+
+/** A {@link Typing} that the validation algorithms update with the status they compute.
+ * 
+ * The implementations differ by the way they store the status, see {@link TypingForValidation}, {@link DictionaryTyping}, {@link BitSetTyping} and {@link ConcurrentTyping}.
+ */
+public interface MutableTyping extends Typing {
+	
+	public void setStatus(RDFTerm node, Label label, Status status);
+	
+	public default boolean isNonConformant(RDFTerm node, Label label) {
+		return getStatus(node, label) != Status.CONFORMANT;
+	}
+	
+	/** The labels that have a status for the node. */
+	public Set<Label> getShapesLabel(RDFTerm node);
+	
+	/** The nodes that have a status for the label. */
+	public Set<RDFTerm> getNodes(Label label);
+	
+	/** Removes the status of the pair, which is then not computed. */
+	public void removeNodeLabel(RDFTerm node, Label label);
+
+}
@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.validation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+import org.apache.commons.rdf.api.Graph;
+import org.apache.commons.rdf.api.RDFTerm;
+
+import fr.inria.lille.shexjava.schema.Label;
+import fr.inria.lille.shexjava.schema.ShexSchema;
+import fr.inria.lille.shexjava.shapeMap.BaseShapeMap;
+import fr.inria.lille.shexjava.shapeMap.ResultShapeMap;
+import fr.inria.lille.shexjava.shapeMap.abstrsynt.NodeSeletorRDFTerm;
+import fr.inria.lille.shexjava.shapeMap.abstrsynt.ShapeAssociation;
+import fr.inria.lille.shexjava.shapeMap.abstrsynt.ShapeSelectorLabel;
+import fr.inria.lille.shexjava.util.Pair;
+
+/** Validates the associations of a shape map in parallel.
+ *
+ * The pairs (node, label) selected by the shape map are split in chunks that are validated by the threads of an {@link ExecutorService}.
+ * A {@link ValidationAlgorithm} is not thread-safe, so every chunk is validated by a validator that is used by one thread at a time.
+ * Validators are kept between calls and reused, so that the results they memorized are not lost.
+ * The status of every validated pair is final and is published in a {@link ConcurrentTyping} shared with all the workers, so a pair is validated at most once.
+ * With the default workers, the intermediate results memorized by a worker are also published in the shared typing, 
+ * and the state of the workers is reset at the end of every validation so that they do not retain the terms of the graph.
+ * The returned {@link ResultShapeMap} contains the same associations, in the same order, as {@link ValidationAlgorithm#validate(BaseShapeMap)}.
+ *
+ * Matching observers are not supported by the parallel validation.
+ */
+public class ParallelValidation {
+	public static final int DEFAULT_CHUNK_SIZE = 128;
+
+	private final ShexSchema schema;
+	private final Graph graph;
+	private final BiFunction<ShexSchema, Graph, ? extends ValidationAlgorithm> validatorFactory;
+	private final boolean defaultWorkers;
+
+	private final Queue<ValidationAlgorithm> idleValidators;
+	private ConcurrentTyping typing;
+	private int chunkSize;
+
+
+	/** The workers use {@link RecursiveValidationWithMemorization} and save their results in the shared typing.
+	 * The schema is compiled once for all the workers.
+	 *
+	 * @param schema
+	 * @param graph
+	 */
+	public ParallelValidation(ShexSchema schema, Graph graph) {
+		this(new CompiledSchema(schema), graph);
+	}
+
+	/** The workers use {@link RecursiveValidationWithMemorization} with the compiled schema and save their results in the shared typing.
+	 *
+	 * @param compiledSchema
+	 * @param graph
+	 */
+	public ParallelValidation(CompiledSchema compiledSchema, Graph graph) {
+		this.schema = compiledSchema.getSchema();
+		this.graph = graph;
+		this.validatorFactory = (s, g) -> new RecursiveValidationWithMemorization(compiledSchema, g, typing);
+		this.defaultWorkers = true;
+		this.idleValidators = new ConcurrentLinkedQueue<>();
+		this.typing = new ConcurrentTyping();
+		this.chunkSize = DEFAULT_CHUNK_SIZE;
+	}
+
+	/**
+	 * @param schema
+	 * @param graph
+	 * @param validatorFactory creates the validator used by a worker
+	 */
+	public ParallelValidation(ShexSchema schema, Graph graph, BiFunction<ShexSchema, Graph, ? extends ValidationAlgorithm> validatorFactory) {
+		this.schema = schema;
+		this.graph = graph;
+		this.validatorFactory = validatorFactory;
+		this.defaultWorkers = false;
+		this.idleValidators = new ConcurrentLinkedQueue<>();
+		this.typing = new ConcurrentTyping();
+		this.chunkSize = DEFAULT_CHUNK_SIZE;
+	}
+
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/** Sets the number of (node, label) pairs validated by a task. */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("Invalid argument value: chunk size must be positive.");
+		this.chunkSize = chunkSize;
+	}
+
+
+	/** Validates the shape map using the common fork-join pool.
+	 *
+	 * @param shapeMap
+	 * @return a shape map with the result
+	 * @throws Exception the first exception thrown by a worker
+	 * @see ValidationAlgorithm#validate(BaseShapeMap)
+	 */
+	public ResultShapeMap validate(BaseShapeMap shapeMap) throws Exception {
+		return validate(shapeMap, null, ForkJoinPool.commonPool());
+	}
+
+
+	/** Validates the shape map using the given executor.
+	 *
+	 * A {@link ComputationController} is not thread-safe, so every chunk of pairs is validated with a new controller given by compControllers.
+	 *
+	 * @param shapeMap
+	 * @param compControllers gives the controller of a chunk, can be null
+	 * @param executor
+	 * @return a shape map with the result
+	 * @throws Exception the first exception thrown by a worker
+	 * @see ValidationAlgorithm#validate(BaseShapeMap, ComputationController)
+	 */
+	public ResultShapeMap validate(BaseShapeMap shapeMap, Supplier<? extends ComputationController> compControllers, ExecutorService executor) throws Exception {
+		List<Pair<RDFTerm,Label>> requests = new ArrayList<>();
+		for (ShapeAssociation sa:shapeMap.getAssociations()) {
+			Label seLabel = sa.getShapeSelector().apply(schema);
+			for(RDFTerm node:sa.getNodeSelector().apply(graph))
+				requests.add(new Pair<>(node,seLabel));
+		}
+
+		Status[] statuses = new Status[requests.size()];
+		List<Future<?>> tasks = new ArrayList<>();
+		for (int start = 0; start < requests.size(); start += chunkSize) {
+			int from = start;
+			int to = Math.min(start+chunkSize, requests.size());
+			tasks.add(executor.submit(() -> {
+				validateChunk(requests, from, to, statuses, compControllers == null ? null : compControllers.get());
+				return null;
+			}));
+		}
+
+		try {
+			for (Future<?> task:tasks)
+				task.get();
+		} catch (ExecutionException e) {
+			for (Future<?> task:tasks)
+				task.cancel(true);
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+		// the results of the default workers are in the shared typing, they release the terms of this validation
+		if (defaultWorkers)
+			for (ValidationAlgorithm validator:idleValidators)
+				validator.resetTyping();
+
+		List<ShapeAssociation> results = new ArrayList<>(requests.size());
+		for (int i = 0; i < statuses.length; i++) {
+			Pair<RDFTerm,Label> request = requests.get(i);
+			ShapeAssociation saRes = new ShapeAssociation(new NodeSeletorRDFTerm(request.one), new ShapeSelectorLabel(request.two));
+			saRes.setStatus(statuses[i]);
+			results.add(saRes);
+		}
+		return new ResultShapeMap(results);
+	}
+
+
+	private void validateChunk(List<Pair<RDFTerm,Label>> requests, int from, int to, Status[] statuses, ComputationController compController) throws Exception {
+		ValidationAlgorithm validator = idleValidators.poll();
+		if (validator == null)
+			validator = validatorFactory.apply(schema, graph);
+		try {
+			for (int i = from; i < to; i++) {
+				Pair<RDFTerm,Label> request = requests.get(i);
+				Status status = typing.getStatus(request.one, request.two);
+				if (status == Status.NOTCOMPUTED) {
+					status = validator.validate(request.one, request.two, compController) ? Status.CONFORMANT : Status.NONCONFORMANT;
+					status = typing.publishStatus(request.one, request.two, status);
+				}
+				statuses[i] = status;
+			}
+		} finally {
+			idleValidators.add(validator);
+		}
+	}
+
+
+	/** The typing with the status of all the pairs (node, label) validated so far.  */
+	public Typing getTyping() {
+		return typing;
+	}
+
+	/** Resets the typing and the validators. Must not be called during a validation. */
+	public void resetTyping() {
+		idleValidators.clear();
+		typing = new ConcurrentTyping();
+	}
+
+}
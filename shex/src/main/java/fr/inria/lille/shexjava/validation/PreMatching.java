@@ -43,6 +43,14 @@ public class PreMatching {
 		return matchedToExtra;
 	}
 	
+	/** Tests whether every triple matches exactly one triple constraint, in which case there is a unique way to match the triples. */
+	public boolean hasSingleCandidates() {
+		for (List<TripleConstraint> candidates:preMatchingMap.values())
+			if (candidates.size() != 1)
+				return false;
+		return true;
+	}
+	
 	
 	
 	
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.validation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.rdf.api.IRI;
+import org.apache.commons.rdf.api.RDFTerm;
+import org.apache.commons.rdf.api.Triple;
+
+import fr.inria.lille.shexjava.schema.abstrsynt.TripleConstraint;
+
+/** Indexes the triple constraints of a shape by predicate and direction.
+ *
+ * The candidates for a triple are the triple constraints with the predicate of the triple and with a direction in which the focus node is the subject or the object of the triple,
+ * in the order of the list used to build the index.
+ * The index is immutable.
+ */
+public class PredicateIndex {
+	private final List<TripleConstraint> constraints;
+	private final Map<IRI,List<TripleConstraint>> forward;
+	private final Map<IRI,List<TripleConstraint>> inverse;
+	private final Map<IRI,List<TripleConstraint>> both;
+
+	public PredicateIndex(List<TripleConstraint> constraints) {
+		this.constraints = Collections.unmodifiableList(new ArrayList<>(constraints));
+		Map<IRI,List<TripleConstraint>> fwd = new HashMap<>();
+		Map<IRI,List<TripleConstraint>> inv = new HashMap<>();
+		Map<IRI,List<TripleConstraint>> all = new HashMap<>();
+		for (TripleConstraint tc:constraints) {
+			IRI predicate = tc.getProperty().getIri();
+			(tc.getProperty().isForward() ? fwd : inv).computeIfAbsent(predicate, p -> new ArrayList<>()).add(tc);
+			all.computeIfAbsent(predicate, p -> new ArrayList<>()).add(tc);
+		}
+		this.forward = freeze(fwd);
+		this.inverse = freeze(inv);
+		this.both = freeze(all);
+	}
+
+	/** The triple constraints used to build the index. */
+	public List<TripleConstraint> getConstraints() {
+		return constraints;
+	}
+
+	/** The predicates of the forward triple constraints. */
+	public Set<IRI> getForwardPredicates() {
+		return forward.keySet();
+	}
+
+	/** The predicates of the inverse triple constraints. */
+	public Set<IRI> getInversePredicates() {
+		return inverse.keySet();
+	}
+
+	/** The triple constraints that can be matched by the triple in the neighbourhood of the focus node.
+	 *
+	 * @param focusNode
+	 * @param triple
+	 * @return an unmodifiable list, empty if no triple constraint has the predicate of the triple
+	 */
+	public List<TripleConstraint> getCandidates(RDFTerm focusNode, Triple triple) {
+		boolean asSubject = ValidationUtils.sameTerm(triple.getSubject(), focusNode);
+		boolean asObject = ValidationUtils.sameTerm(triple.getObject(), focusNode);
+		Map<IRI,List<TripleConstraint>> index;
+		if (asSubject && asObject)
+			index = both;
+		else if (asSubject)
+			index = forward;
+		else if (asObject)
+			index = inverse;
+		else
+			return Collections.emptyList();
+		return index.getOrDefault(triple.getPredicate(), Collections.emptyList());
+	}
+
+	private static Map<IRI,List<TripleConstraint>> freeze(Map<IRI,List<TripleConstraint>> map) {
+		for (Map.Entry<IRI,List<TripleConstraint>> entry:map.entrySet())
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		return Collections.unmodifiableMap(map);
+	}
+}
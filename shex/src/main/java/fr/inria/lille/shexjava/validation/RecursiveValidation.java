@@ -16,8 +16,10 @@
  ******************************************************************************/
 package fr.inria.lille.shexjava.validation;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 
 import org.apache.commons.rdf.api.Graph;
@@ -34,7 +36,6 @@ import fr.inria.lille.shexjava.schema.abstrsynt.ShapeExprRef;
 import fr.inria.lille.shexjava.schema.abstrsynt.ShapeNot;
 import fr.inria.lille.shexjava.schema.abstrsynt.ShapeOr;
 import fr.inria.lille.shexjava.schema.abstrsynt.TripleConstraint;
-import fr.inria.lille.shexjava.schema.abstrsynt.TripleExpr;
 
 
 /** Implements the Recursive validation algorithm.
@@ -50,6 +51,10 @@ public class RecursiveValidation extends SORBEBasedValidation {
 		super(schema,graph);
 	}
 	
+	public RecursiveValidation(CompiledSchema compiledSchema, Graph graph) {
+		super(compiledSchema,graph);
+	}
+	
 	
 	protected boolean performValidation(RDFTerm focusNode, Label label) throws Exception {
 		this.resetTyping();
@@ -63,13 +68,25 @@ public class RecursiveValidation extends SORBEBasedValidation {
 	}
 	
 	
+	// The validation is performed with an explicit stack of frames instead of recursive calls, so that its depth is not bounded by the stack of the thread.
 	protected boolean recursiveValidation(RDFTerm focusNode, Label label) throws Exception {
-		this.typing.setStatus(focusNode, label, Status.CONFORMANT);
-		EvaluateShapeExpressionVisitor visitor = new EvaluateShapeExpressionVisitor(focusNode);
-		visitor.accept(schema.getShapeExprsMap().get(label));
-		this.typing.removeNodeLabel(focusNode, label);
-		return visitor.result;
-		
+		Deque<Frame> stack = new ArrayDeque<>();
+		stack.push(new CallFrame(focusNode, label));
+		Boolean childResult = null;
+		while (true) {
+			Frame top = stack.peek();
+			Frame child = top.next(childResult);
+			if (child != null) {
+				stack.push(child);
+				childResult = null;
+				continue;
+			}
+			stack.pop();
+			top.finish();
+			if (stack.isEmpty())
+				return top.result;
+			childResult = top.result;
+		}
 	}
 	
 	@Override
@@ -80,104 +97,193 @@ public class RecursiveValidation extends SORBEBasedValidation {
 	@Override
 	public void resetTyping() {
 		this.typing = new TypingForValidation();
+		clearNeighbourhoodCache();
+	}
+	
+	
+	
+	/** A step of the evaluation that can request the evaluation of other frames one at a time. */
+	private abstract class Frame {
+		protected boolean result = false;
+		
+		/** Receives the result of the previous requested frame, null at the first call.
+		 * @return the next frame to evaluate, or null if the result of the frame is computed
+		 */
+		abstract Frame next(Boolean childResult) throws Exception;
+		
+		void finish() {}
 	}
 	
 	
-	class EvaluateShapeExpressionVisitor  {
-		private RDFTerm node; 
-		private Boolean result;
+	// The pair is assumed conformant during its evaluation
+	private class CallFrame extends Frame {
+		private final RDFTerm node;
+		private final Label label;
 		
-		public EvaluateShapeExpressionVisitor(RDFTerm one) {
-			this.node = one;
+		CallFrame(RDFTerm node, Label label) {
+			this.node = node;
+			this.label = label;
+			typing.setStatus(node, label, Status.CONFORMANT);
 		}
-
 		
-		public Boolean getResult() {
-			if (result == null) return false;
-			return result;
+		@Override
+		Frame next(Boolean childResult) {
+			if (childResult == null)
+				return expressionFrame(node, schema.getShapeExprsMap().get(label));
+			result = childResult;
+			return null;
 		}
 		
-		public void accept(ShapeExpr expr) throws Exception {
-			if (expr instanceof ShapeAnd)
-				this.visitShapeAnd((ShapeAnd) expr);
-			if (expr instanceof ShapeOr)
-				this.visitShapeOr((ShapeOr) expr);
-			if (expr instanceof ShapeNot)
-				this.visitShapeNot((ShapeNot) expr);
-			if (expr instanceof Shape)
-				this.visitShape((Shape) expr);
-			if (expr instanceof NodeConstraint)
-				this.visitNodeConstraint((NodeConstraint) expr);
-			if (expr instanceof ShapeExprRef)
-				this.visitShapeExprRef((ShapeExprRef) expr);
+		@Override
+		void finish() {
+			typing.removeNodeLabel(node, label);
 		}
+	}
+	
+	
+	private Frame expressionFrame(RDFTerm node, ShapeExpr expr) {
+		if (expr instanceof ShapeAnd)
+			return new ShapeAndFrame(node, (ShapeAnd) expr);
+		if (expr instanceof ShapeOr)
+			return new ShapeOrFrame(node, (ShapeOr) expr);
+		if (expr instanceof ShapeNot)
+			return new ShapeNotFrame(node, (ShapeNot) expr);
+		if (expr instanceof Shape)
+			return new ShapeFrame(node, (Shape) expr);
+		if (expr instanceof NodeConstraint)
+			return new NodeConstraintFrame(node, (NodeConstraint) expr);
+		if (expr instanceof ShapeExprRef)
+			return expressionFrame(node, ((ShapeExprRef) expr).getShapeDefinition());
+		return new NodeConstraintFrame(node, null);
+	}
+	
+	
+	private class ShapeAndFrame extends Frame {
+		private final RDFTerm node;
+		private final Iterator<ShapeExpr> iter;
 		
-		public void visitShapeAnd(ShapeAnd expr) throws Exception {
-			for (ShapeExpr e : expr.getSubExpressions()) {
-				this.accept(e);
-				if (!result) break;
-			}
+		ShapeAndFrame(RDFTerm node, ShapeAnd expr) {
+			this.node = node;
+			this.iter = expr.getSubExpressions().iterator();
 		}
 
-		public void visitShapeOr(ShapeOr expr) throws Exception {
-			for (ShapeExpr e : expr.getSubExpressions()) {
-				this.accept(e);
-				if (result) break;
+		@Override
+		Frame next(Boolean childResult) {
+			if (childResult != null) {
+				result = childResult;
+				if (!result)
+					return null;
 			}
+			return iter.hasNext() ? expressionFrame(node, iter.next()) : null;
 		}
+	}
+	
+	
+	private class ShapeOrFrame extends Frame {
+		private final RDFTerm node;
+		private final Iterator<ShapeExpr> iter;
 		
-		public void visitShapeNot(ShapeNot expr) throws Exception {
-			this.accept(expr.getSubExpression());
-			result = !result;
+		ShapeOrFrame(RDFTerm node, ShapeOr expr) {
+			this.node = node;
+			this.iter = expr.getSubExpressions().iterator();
 		}
+
+		@Override
+		Frame next(Boolean childResult) {
+			if (childResult != null) {
+				result = childResult;
+				if (result)
+					return null;
+			}
+			return iter.hasNext() ? expressionFrame(node, iter.next()) : null;
+		}
+	}
+	
+	
+	private class ShapeNotFrame extends Frame {
+		private final RDFTerm node;
+		private final ShapeNot expr;
 		
-		public void visitShape(Shape expr) throws Exception {
-			result = isLocallyValid(node, expr);
+		ShapeNotFrame(RDFTerm node, ShapeNot expr) {
+			this.node = node;
+			this.expr = expr;
 		}
 
-		public void visitNodeConstraint(NodeConstraint expr) {
-			result = expr.contains(node);
-			typing.setStatus(node, expr.getId(), result?Status.CONFORMANT:Status.NONCONFORMANT);
+		@Override
+		Frame next(Boolean childResult) {
+			if (childResult == null)
+				return expressionFrame(node, expr.getSubExpression());
+			result = !childResult;
+			return null;
+		}
+	}
+	
+	
+	// expr is null for the shape expressions that are not satisfied
+	private class NodeConstraintFrame extends Frame {
+		private final RDFTerm node;
+		private final NodeConstraint expr;
+		
+		NodeConstraintFrame(RDFTerm node, NodeConstraint expr) {
+			this.node = node;
+			this.expr = expr;
 		}
 
-		public void visitShapeExprRef(ShapeExprRef ref) throws Exception {
-			this.accept(ref.getShapeDefinition());
+		@Override
+		Frame next(Boolean childResult) {
+			if (expr != null) {
+				result = expr.contains(node);
+				typing.setStatus(node, expr.getId(), result?Status.CONFORMANT:Status.NONCONFORMANT);
+			}
+			return null;
 		}
 	}
 	
 	
-	private boolean isLocallyValid (RDFTerm node, Shape shape) throws Exception {
-		TripleExpr tripleExpression = this.sorbeGenerator.getSORBETripleExpr(shape);
-
-		List<TripleConstraint> constraints = collectorTC.getTCs(tripleExpression);	
-		List<Triple> neighbourhood = ValidationUtils.getMatchableNeighbourhood(graph, node, constraints, shape.isClosed());
-
+	// Tests whether the node's neighbourhood matches the shape. The pairs of the neighbours that are not typed are evaluated first.
+	private class ShapeFrame extends Frame {
+		private final RDFTerm node;
+		private final Shape shape;
+		private final Iterator<Entry<Triple,List<TripleConstraint>>> triples;
 		// Match using only predicate and recursive test. The following lines is the only big difference with refine validation. 
-		TypingForValidation localTyping = new TypingForValidation();
+		private final TypingForValidation localTyping = new TypingForValidation();
+		private Triple curTriple;
+		private Iterator<TripleConstraint> curLTCs;
+		private RDFTerm destNode;
+		private TripleConstraint pending;
 		
-		PreMatching preMatching = ValidationUtils.computePreMatching(node, neighbourhood, constraints, shape.getExtraProperties(), ValidationUtils.getPredicateOnlyMatcher());
-		Map<Triple,List<TripleConstraint>> matchingTC1 = preMatching.getPreMatching();
-			
-		for(Entry<Triple,List<TripleConstraint>> entry:matchingTC1.entrySet()) {		
-			for (TripleConstraint tc:entry.getValue()) {
-				RDFTerm destNode = entry.getKey().getObject();
-				if (!tc.getProperty().isForward())
-					destNode = entry.getKey().getSubject();
+		ShapeFrame(RDFTerm node, Shape shape) {
+			this.node = node;
+			this.shape = shape;
+			PreMatching preMatching = getPredicateOnlyPreMatching(node, shape);
+			this.triples = preMatching.getPreMatching().entrySet().iterator();
+		}
 
-				if (this.typing.getStatus(destNode, tc.getShapeExpr().getId()).equals(Status.NOTCOMPUTED)) {
-					if (this.recursiveValidation(destNode, tc.getShapeExpr().getId())) 
-						localTyping.setStatus(destNode, tc.getShapeExpr().getId(),Status.CONFORMANT);	
-					else
-						localTyping.setStatus(destNode, tc.getShapeExpr().getId(),Status.NONCONFORMANT);	
-				} else {
-					localTyping.setStatus(destNode, tc.getShapeExpr().getId(), typing.getStatus(destNode, tc.getShapeExpr().getId()));
+		@Override
+		Frame next(Boolean childResult) throws Exception {
+			if (childResult != null)
+				localTyping.setStatus(destNode, pending.getShapeExpr().getId(), childResult?Status.CONFORMANT:Status.NONCONFORMANT);
+			while (true) {
+				while (curLTCs != null && curLTCs.hasNext()) {
+					TripleConstraint tc = curLTCs.next();
+					RDFTerm dest = tc.getProperty().isForward() ? curTriple.getObject() : curTriple.getSubject();
+					Label tcLabel = tc.getShapeExpr().getId();
+					if (typing.getStatus(dest, tcLabel).equals(Status.NOTCOMPUTED)) {
+						destNode = dest;
+						pending = tc;
+						return new CallFrame(dest, tcLabel);
+					}
+					localTyping.setStatus(dest, tcLabel, typing.getStatus(dest, tcLabel));
 				}
-
-			}			
+				if (!triples.hasNext())
+					break;
+				Entry<Triple,List<TripleConstraint>> entry = triples.next();
+				curTriple = entry.getKey();
+				curLTCs = entry.getValue().iterator();
+			}
+			result = findMatching(node, shape, localTyping).hasMatching();
+			return null;
 		}
-				
-		return this.findMatching(node, shape, localTyping).getMatching() != null;
-	}	
+	}
 
-	
 }
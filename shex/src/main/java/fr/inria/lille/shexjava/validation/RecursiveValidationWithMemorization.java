@@ -16,9 +16,11 @@
  ******************************************************************************/
 package fr.inria.lille.shexjava.validation;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -28,10 +30,9 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.apache.commons.rdf.api.Graph;
+import org.apache.commons.rdf.api.IRI;
 import org.apache.commons.rdf.api.RDFTerm;
 import org.apache.commons.rdf.api.Triple;
-import org.jgrapht.graph.DefaultDirectedGraph;
-import org.jgrapht.graph.DefaultEdge;
 
 import fr.inria.lille.shexjava.schema.Label;
 import fr.inria.lille.shexjava.schema.ShexSchema;
@@ -43,8 +44,11 @@ import fr.inria.lille.shexjava.schema.abstrsynt.ShapeExprRef;
 import fr.inria.lille.shexjava.schema.abstrsynt.ShapeNot;
 import fr.inria.lille.shexjava.schema.abstrsynt.ShapeOr;
 import fr.inria.lille.shexjava.schema.abstrsynt.TripleConstraint;
-import fr.inria.lille.shexjava.schema.abstrsynt.TripleExpr;
+import fr.inria.lille.shexjava.util.IndexedLongStack;
+import fr.inria.lille.shexjava.util.LongDirectedGraph;
+import fr.inria.lille.shexjava.util.LongObjectHashMap;
 import fr.inria.lille.shexjava.util.Pair;
+import fr.inria.lille.shexjava.util.TermDictionary;
 
 
 /** Implements the Recursive validation algorithm with memorization of the result by recursive call if they are correct.
@@ -53,50 +57,173 @@ import fr.inria.lille.shexjava.util.Pair;
  * @author Jérémie Dusart 
  */
 public class RecursiveValidationWithMemorization extends SORBEBasedValidation {
+	// encodes the pairs (node, label) used as keys by the structures of the memorization
+	protected TermDictionary dictionary;
+	private final boolean useDictionaryTyping;
 	
 	public RecursiveValidationWithMemorization(ShexSchema schema, Graph graph) {
 		super(schema,graph);
+		this.dictionary = new TermDictionary();
+		this.useDictionaryTyping = false;
 		this.resetTyping();
 
 	}
 	
-	private TypingForValidation typing;
+	public RecursiveValidationWithMemorization(CompiledSchema compiledSchema, Graph graph) {
+		super(compiledSchema,graph);
+		this.dictionary = new TermDictionary();
+		this.useDictionaryTyping = false;
+		this.resetTyping();
+	}
+	
+	/** The typing of the validator is a {@link DictionaryTyping} that uses the given dictionary.
+	 * 
+	 * @param schema
+	 * @param graph
+	 * @param dictionary
+	 */
+	public RecursiveValidationWithMemorization(ShexSchema schema, Graph graph, TermDictionary dictionary) {
+		super(schema,graph);
+		this.dictionary = dictionary;
+		this.useDictionaryTyping = true;
+		this.resetTyping();
+	}
+	
+	/** The validator saves its final results in the given typing, which can be shared with other validators if it is thread-safe like {@link ConcurrentTyping}.
+	 * 
+	 * @param schema
+	 * @param graph
+	 * @param typing
+	 */
+	public RecursiveValidationWithMemorization(ShexSchema schema, Graph graph, MutableTyping typing) {
+		this(new CompiledSchema(schema), graph, typing);
+	}
+	
+	/** The validator saves its final results in the given typing, which can be shared with other validators if it is thread-safe like {@link ConcurrentTyping}.
+	 * The typing is not reset by {@link #resetTyping()}.
+	 * 
+	 * @param compiledSchema
+	 * @param graph
+	 * @param typing
+	 */
+	public RecursiveValidationWithMemorization(CompiledSchema compiledSchema, Graph graph, MutableTyping typing) {
+		super(compiledSchema,graph);
+		this.dictionary = new TermDictionary();
+		this.useDictionaryTyping = false;
+		this.sharedTyping = typing;
+		this.typing = typing;
+	}
+	
+	private MutableTyping typing;
+	// the typing given to the constructor, null if the validator owns its typing
+	private MutableTyping sharedTyping;
+	// dependencies contains an edge from every pair to the pairs used to compute its result, it is kept between the validations.
+	// It is recorded only in incremental mode, null otherwise.
+	private LongDirectedGraph dependencies;
+	private boolean incremental;
 
 	@Override
 	public Typing getTyping() {
 		return typing;
 	}
 
+	/** Resets the typing, the recorded dependencies and the cached neighbourhoods.
+	 * If the validator was created with a typing, which may be shared with other validators, this typing is kept and only the state of the validator is reset.
+	 * Unless it was given to the constructor, the dictionary of the validator is replaced, so that the terms of the previous validations are not retained.
+	 */
 	@Override
 	public void resetTyping() {
-		this.typing = new TypingForValidation();
+		if (sharedTyping == null) {
+			if (useDictionaryTyping)
+				this.typing = new DictionaryTyping(dictionary);
+			else
+				this.typing = new TypingForValidation();
+		}
+		if (!useDictionaryTyping)
+			this.dictionary = new TermDictionary();
+		if (dependencies != null)
+			dependencies.clear();
+		clearNeighbourhoodCache();
+	}
+	
+	/** Enables or disables the recording of the dependencies between the results, which is required by {@link #revalidate(Collection, Collection)}.
+	 * It is disabled by default. Only the results computed while it is enabled are recorded, so it should be enabled before the first validation.
+	 * 
+	 * @param incremental
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+		if (!incremental)
+			this.dependencies = null;
+		else if (this.dependencies == null)
+			this.dependencies = new LongDirectedGraph();
+	}
+	
+	public boolean isIncremental() {
+		return incremental;
 	}
 
 	
 	protected boolean performValidation(RDFTerm focusNode, Label label) throws Exception {
-		hyp = new LinkedList<>();
-		g = new DefaultDirectedGraph<>(DefaultEdge.class);
-		unsavedResults = new HashMap<>();
-		lowestReqHyp= new HashMap<>();
+		// the structures are reused from one focus node to the next
+		if (g == null) {
+			hyp = new IndexedLongStack();
+			g = new LongDirectedGraph();
+			unsavedResults = new LongObjectHashMap<>();
+			lowestReqHyp= new LongObjectHashMap<>();
+		} else {
+			hyp.clear();
+			g.clear();
+			unsavedResults.clear();
+			lowestReqHyp.clear();
+		}
 		
 		return recursiveValidation(focusNode,label);	
 	}
 
+	// The following structures use the keys of the pairs (node, label) in the dictionary
 	// hyp contains the stack of hypothesis perform in the recursion
-	protected LinkedList<Pair<RDFTerm,Label>> hyp;
+	protected IndexedLongStack hyp;
 	// g contains the graph of dependencies that cannot be saved yet
-	protected DefaultDirectedGraph<Pair<RDFTerm,Label>, DefaultEdge> g;
+	protected LongDirectedGraph g;
 	// unsavedResults contains the result of the call that can't be put in the typing yet because they are dependent of an hypothesis
-	protected Map<Pair<RDFTerm,Label>,Status> unsavedResults;
+	protected LongObjectHashMap<Status> unsavedResults;
 	// lowestReqHyp contains for the unsavedResults a link to the lowest hypothesis that is dependent of.
-	protected Map<Pair<RDFTerm,Label>,Pair<RDFTerm,Label>> lowestReqHyp;
+	protected LongObjectHashMap<Long> lowestReqHyp;
 	
 	
+	// The validation is performed with an explicit stack of frames instead of recursive calls, so that its depth is not bounded by the stack of the thread.
+	// A frame evaluates a pair (node, label) that is in hyp, and requests the evaluation of the pairs it depends on one at a time.
 	protected boolean recursiveValidation(RDFTerm focusNode, Label label) throws Exception {
-
+		Boolean immediate = getKnownResult(focusNode, label);
+		if (immediate != null)
+			return immediate;
+		
+		Deque<ValidationFrame> stack = new ArrayDeque<>();
+		stack.push(startFrame(focusNode, label));
+		Boolean childResult = null;
+		while (true) {
+			ValidationFrame top = stack.peek();
+			Pair<RDFTerm,Label> call = top.next(childResult);
+			if (call != null) {
+				childResult = getKnownResult(call.one, call.two);
+				if (childResult == null)
+					stack.push(startFrame(call.one, call.two));
+				continue;
+			}
+			stack.pop();
+			boolean res = finishFrame(top);
+			if (stack.isEmpty())
+				return res;
+			childResult = res;
+		}
+	}
+	
+	// The result of the call if it does not need the evaluation of other pairs, null otherwise
+	private Boolean getKnownResult(RDFTerm focusNode, Label label) {
 		if (!this.typing.getStatus(focusNode, label).equals(Status.NOTCOMPUTED))
 			return this.typing.isConformant(focusNode, label);
-		Pair<RDFTerm,Label> key = new Pair<>(focusNode,label);
+		long key = dictionary.getKey(focusNode,label);
 		if (hyp.contains(key))
 			return true;
 		if (g.containsVertex(key))
@@ -107,134 +234,251 @@ public class RecursiveValidationWithMemorization extends SORBEBasedValidation {
 			updateGraph(focusNode, label, getStatus(res), Collections.emptySet());		
 			return res;		
 		}
-		
-		hyp.addLast(key);
-		boolean res=false;
-		if (schema.getShapeExprsMap().get(label) instanceof ShapeNot)
-			res=recursiveValidationShapeNot(focusNode,label);
-		if (schema.getShapeExprsMap().get(label) instanceof ShapeExprRef)
-			res=recursiveValidationShapeExprRef(focusNode,label);
-		if (schema.getShapeExprsMap().get(label) instanceof ShapeOr)
-			res=recursiveValidationShapeOr(focusNode,label);
-		if (schema.getShapeExprsMap().get(label) instanceof ShapeAnd)
-			res=recursiveValidationShapeAnd(focusNode,label);
-		if (schema.getShapeExprsMap().get(label) instanceof Shape)
-			res=recursiveValidationShape(focusNode,label);
-		hyp.remove(key);
+		return null;
+	}
+	
+	private ValidationFrame startFrame(RDFTerm focusNode, Label label) {
+		hyp.push(dictionary.getKey(focusNode,label));
+		ShapeExpr expr = schema.getShapeExprsMap().get(label);
+		if (expr instanceof ShapeNot)
+			return new ShapeNotFrame(focusNode, label, (ShapeNot) expr);
+		if (expr instanceof ShapeExprRef)
+			return new ShapeExprRefFrame(focusNode, label, (ShapeExprRef) expr);
+		if (expr instanceof ShapeOr)
+			return new ShapeOrFrame(focusNode, label, (ShapeOr) expr);
+		if (expr instanceof ShapeAnd)
+			return new ShapeAndFrame(focusNode, label, (ShapeAnd) expr);
+		if (expr instanceof Shape)
+			return new ShapeFrame(focusNode, label, (Shape) expr);
+		// other shape expressions are not satisfied
+		return new ValidationFrame(focusNode, label);
+	}
+	
+	private boolean finishFrame(ValidationFrame frame) {
+		long key = hyp.pop();
 		
 		if (g.containsVertex(key)) {
-			unsavedResults.put(key, res?Status.CONFORMANT:Status.NONCONFORMANT);
-			memorize(focusNode,label);
+			unsavedResults.put(key, frame.result?Status.CONFORMANT:Status.NONCONFORMANT);
+			memorize(frame.node,frame.label);
 		}
-		return res;
+		return frame.result;
 	}
 	
 	
-	protected boolean recursiveValidationShapeNot(RDFTerm focusNode, Label label) throws Exception {
-		ShapeNot shape = (ShapeNot) schema.getShapeExprsMap().get(label);
+	private class ValidationFrame {
+		protected final RDFTerm node;
+		protected final Label label;
+		protected boolean result = false;
 		
-		boolean res = ! this.recursiveValidation(focusNode, shape.getSubExpression().getId());
-				
-		Set<Pair<RDFTerm,Label>> required = new HashSet<>();
-		required.add(new Pair<>(focusNode,shape.getSubExpression().getId()));
-		updateGraph(focusNode, label, getStatus(res), required);			
+		ValidationFrame(RDFTerm node, Label label) {
+			this.node = node;
+			this.label = label;
+		}
 		
-		return res;
+		/** Receives the result of the previous requested call, null at the first call.
+		 * @return the next pair to evaluate, or null if the result of the frame is computed
+		 */
+		Pair<RDFTerm,Label> next(Boolean childResult) throws Exception {
+			return null;
+		}
 	}
 	
 	
-	
-	protected boolean recursiveValidationShapeExprRef(RDFTerm focusNode, Label label) throws Exception {
-		ShapeExprRef shape = (ShapeExprRef) schema.getShapeExprsMap().get(label);
-		
-		boolean res = this.recursiveValidation(focusNode, shape.getLabel());
+	private class ShapeNotFrame extends ValidationFrame {
+		private final ShapeNot shape;
 		
-		Set<Pair<RDFTerm,Label>> required = new HashSet<>();
-		required.add(new Pair<>(focusNode,shape.getLabel()));	
-		updateGraph(focusNode, label, getStatus(res), required);			
+		ShapeNotFrame(RDFTerm node, Label label, ShapeNot shape) {
+			super(node, label);
+			this.shape = shape;
+		}
 		
-		return res;
+		@Override
+		Pair<RDFTerm,Label> next(Boolean childResult) {
+			if (childResult == null)
+				return new Pair<>(node, shape.getSubExpression().getId());
+			
+			result = ! childResult;
+			Set<Pair<RDFTerm,Label>> required = new HashSet<>();
+			required.add(new Pair<>(node,shape.getSubExpression().getId()));
+			updateGraph(node, label, getStatus(result), required);	
+			return null;
+		}
 	}
 	
-	protected boolean recursiveValidationShapeAnd(RDFTerm focusNode, Label label) throws Exception {
-		ShapeAnd shape = (ShapeAnd) schema.getShapeExprsMap().get(label);
+	
+	private class ShapeExprRefFrame extends ValidationFrame {
+		private final ShapeExprRef shape;
 		
-		boolean res = true;
-		Set<Pair<RDFTerm,Label>> required = new HashSet<>();
-		Iterator<ShapeExpr> iter = shape.getSubExpressions().iterator();
+		ShapeExprRefFrame(RDFTerm node, Label label, ShapeExprRef shape) {
+			super(node, label);
+			this.shape = shape;
+		}
 		
-		while(res && iter.hasNext()) {
-			ShapeExpr next = iter.next();
-			res = this.recursiveValidation(focusNode, next.getId());
-			if (res) {
-				required.add(new Pair<>(focusNode,next.getId()));
-			} else {
-				required.clear();
-				required.add(new Pair<>(focusNode,next.getId()));
-			}
+		@Override
+		Pair<RDFTerm,Label> next(Boolean childResult) {
+			if (childResult == null)
+				return new Pair<>(node, shape.getLabel());
+			
+			result = childResult;
+			Set<Pair<RDFTerm,Label>> required = new HashSet<>();
+			required.add(new Pair<>(node,shape.getLabel()));	
+			updateGraph(node, label, getStatus(result), required);	
+			return null;
 		}
+	}
+	
+	
+	private class ShapeAndFrame extends ValidationFrame {
+		private final Iterator<ShapeExpr> iter;
+		private final Set<Pair<RDFTerm,Label>> required = new HashSet<>();
+		private ShapeExpr current;
 		
-		updateGraph(focusNode, label, getStatus(res), required);			
+		ShapeAndFrame(RDFTerm node, Label label, ShapeAnd shape) {
+			super(node, label);
+			this.iter = shape.getSubExpressions().iterator();
+			this.result = true;
+		}
 		
-		return res;	
+		@Override
+		Pair<RDFTerm,Label> next(Boolean childResult) {
+			if (childResult != null) {
+				result = childResult;
+				if (result) {
+					required.add(new Pair<>(node,current.getId()));
+				} else {
+					required.clear();
+					required.add(new Pair<>(node,current.getId()));
+				}
+			}
+			if (result && iter.hasNext()) {
+				current = iter.next();
+				return new Pair<>(node, current.getId());
+			}
+			updateGraph(node, label, getStatus(result), required);
+			return null;
+		}
 	}
 	
-	protected boolean recursiveValidationShapeOr(RDFTerm focusNode, Label label) throws Exception {
-		ShapeOr shape = (ShapeOr) schema.getShapeExprsMap().get(label);
+	
+	private class ShapeOrFrame extends ValidationFrame {
+		private final Iterator<ShapeExpr> iter;
+		private final Set<Pair<RDFTerm,Label>> required = new HashSet<>();
+		private ShapeExpr current;
 		
-		boolean res = false;
-		Set<Pair<RDFTerm,Label>> required = new HashSet<>();
-		Iterator<ShapeExpr> iter = shape.getSubExpressions().iterator();
+		ShapeOrFrame(RDFTerm node, Label label, ShapeOr shape) {
+			super(node, label);
+			this.iter = shape.getSubExpressions().iterator();
+		}
 		
-		while(!res && iter.hasNext()) {
-			ShapeExpr next = iter.next();
-			res = this.recursiveValidation(focusNode, next.getId());
-			if (res) {
-				required.clear();
-				required.add(new Pair<>(focusNode,next.getId()));
-			} else {
-				required.add(new Pair<>(focusNode,next.getId()));
+		@Override
+		Pair<RDFTerm,Label> next(Boolean childResult) {
+			if (childResult != null) {
+				result = childResult;
+				if (result) {
+					required.clear();
+					required.add(new Pair<>(node,current.getId()));
+				} else {
+					required.add(new Pair<>(node,current.getId()));
+				}
+			}
+			if (!result && iter.hasNext()) {
+				current = iter.next();
+				return new Pair<>(node, current.getId());
 			}
+			updateGraph(node, label, getStatus(result), required);
+			return null;
 		}
-				
-		updateGraph(focusNode, label, getStatus(res), required );			
-		
-		return res;	
 	}
 	
 	
-	private boolean recursiveValidationShape (RDFTerm node, Label label) throws Exception {	
-		Shape shape = (Shape) schema.getShapeExprsMap().get(label);
-
-		TypingForValidation localTyping = new TypingForValidation();
+	// The calls on the neighbours are requested for every triple, in the order of the pre-matching with the predicates only.
+	// The evaluation stops at the first triple that cannot be matched to any triple constraint nor to extra.
+	private class ShapeFrame extends ValidationFrame {
+		private final Shape shape;
+		private final Map<Triple, List<TripleConstraint>> matchingTC1;
+		private final Iterator<Map.Entry<Triple, List<TripleConstraint>>> triples;
+		private final TypingForValidation localTyping = new TypingForValidation();
+		private final List<Triple> extraNeighbours = new ArrayList<>();
+		private Triple curTr;
+		private Iterator<TripleConstraint> curLTCs;
+		private RDFTerm destNode;
+		private boolean tripleCanBeMatched;
+		private TripleConstraint pending;
 		
-		Map<Triple, List<TripleConstraint>> matchingTC1 = computePreMatchingWithPredicateOnly(node, shape);
-		List<Triple> extraNeighbours = new ArrayList<>();
-
-		// the recursive call are performed in the next function and the localTyping is populated
-		// the function return false if a triple cannot be math to any TC and extra
-		if (!performRecursiveCallAndComputeLocalMatching(node,shape,matchingTC1,localTyping,extraNeighbours))
-			// the graph is update in the function call
-			return false;
+		ShapeFrame(RDFTerm node, Label label, Shape shape) {
+			super(node, label);
+			this.shape = shape;
+			this.matchingTC1 = computePreMatchingWithPredicateOnly(node, shape);
+			this.triples = matchingTC1.entrySet().iterator();
+		}
 		
-		Map<Triple, Label> result = this.findMatching(node, shape, localTyping).getMatching();
-		if (result!=null) {
-			// A matching has been found
-			// add in required the requirement for the matching
-			Set<Pair<RDFTerm,Label>> required = result.keySet().parallelStream()
-					.map(tr -> new Pair<>(getOther(tr,node), getShapeExprLabel(result.get(tr)))).collect(Collectors.toSet());
-			// add the triple that were matched to extra 
-			extraNeighbours.stream().forEach(tri -> localTyping.getShapesLabel(getOther(tri,node)).stream()
-											 .forEach(l -> required.add(new Pair<>(getOther(tri,node),l))));
-			updateGraph(node, label, Status.CONFORMANT, required);		
-			return true;
+		@Override
+		Pair<RDFTerm,Label> next(Boolean childResult) throws Exception {
+			if (childResult != null) {
+				Label tcLabel = pending.getShapeExpr().getId();
+				localTyping.setStatus(destNode, tcLabel, childResult ? Status.CONFORMANT : Status.NONCONFORMANT);
+				tripleCanBeMatched = tripleCanBeMatched || childResult;
+			}
+			while (true) {
+				if (curLTCs != null) {
+					while (curLTCs.hasNext()) {
+						TripleConstraint tc = curLTCs.next();
+						Label tcLabel = tc.getShapeExpr().getId();
+						if (typing.getStatus(destNode, tcLabel).equals(Status.NOTCOMPUTED)) {
+							pending = tc;
+							return new Pair<>(destNode, tcLabel);
+						}
+						localTyping.setStatus(destNode, tcLabel, typing.getStatus(destNode, tcLabel));
+						tripleCanBeMatched = tripleCanBeMatched || localTyping.isConformant(destNode, tcLabel);
+					}
+					if (!tripleCanBeMatched) {
+						if (shape.getExtraProperties().contains(curTr.getPredicate())) {
+							extraNeighbours.add(curTr);
+						} else {
+							// Looking at the calls that fails
+							Set<Pair<RDFTerm,Label>> required = matchingTC1.get(curTr).stream()
+									.map(tc->new Pair<>(destNode,tc.getShapeExpr().getId()))
+									.collect(Collectors.toSet());
+							updateGraph(node, shape.getId(), Status.NONCONFORMANT, required);
+							result = false;
+							return null;
+						}
+					}
+				}
+				if (!triples.hasNext())
+					break;
+				Map.Entry<Triple, List<TripleConstraint>> entry = triples.next();
+				curTr = entry.getKey();
+				List<TripleConstraint> tcs = entry.getValue();
+				destNode = tcs.size()>0&&tcs.get(0).getProperty().isForward()? curTr.getObject():curTr.getSubject();
+				curLTCs = tcs.iterator();
+				tripleCanBeMatched = false;
+			}
+			result = computeResult();
+			return null;
 		}
 		
-		// No matching has been found, the result can be saved only if all the failing call can be saved
-		Set<Pair<RDFTerm,Label>> required = localTyping.getStatusMap().keySet().stream()
-				.filter(pair -> localTyping.isNonConformant(pair.one,pair.two)).collect(Collectors.toSet());
-		updateGraph(node, label, Status.NONCONFORMANT, required);
-		return false;
+		private boolean computeResult() throws Exception {
+			LocalMatching matching = findMatching(node, shape, localTyping);
+			if (matching.hasMatching()) {
+				// A matching has been found
+				// add in required the requirement for the matching
+				Set<Pair<RDFTerm,Label>> required = new HashSet<>();
+				for (Map.Entry<Triple, TripleConstraint> e:matching.getMatchedConstraints().entrySet())
+					required.add(new Pair<>(getOther(e.getKey(),node), e.getValue().getShapeExpr().getId()));
+				// add the triple that were matched to extra 
+				extraNeighbours.stream().forEach(tri -> localTyping.getShapesLabel(getOther(tri,node)).stream()
+												 .forEach(l -> required.add(new Pair<>(getOther(tri,node),l))));
+				updateGraph(node, label, Status.CONFORMANT, required);		
+				return true;
+			}
+			
+			// No matching has been found, the result can be saved only if all the failing call can be saved
+			Set<Pair<RDFTerm,Label>> required = localTyping.getStatusMap().keySet().stream()
+					.filter(pair -> localTyping.isNonConformant(pair.one,pair.two)).collect(Collectors.toSet());
+			updateGraph(node, label, Status.NONCONFORMANT, required);
+			return false;
+		}
 	}
 	
 	
@@ -245,37 +489,43 @@ public class RecursiveValidationWithMemorization extends SORBEBasedValidation {
 	// memorize will do something only if you have a loop to an hypothesis
 	protected void memorize(RDFTerm focusNode,  Label label) {
 		
-		LinkedList<Pair<RDFTerm,Label>> S = new LinkedList<>();
-		Pair<RDFTerm,Label> baseKey = new Pair<>(focusNode,label);
+		LinkedList<Long> S = new LinkedList<>();
+		long baseKey = dictionary.getKey(focusNode,label);
 		S.add(baseKey);
 		
-		if (unsavedResults.get(new Pair<>(focusNode,label)).equals(Status.CONFORMANT)) {
+		if (unsavedResults.get(baseKey).equals(Status.CONFORMANT)) {
 			//memorize is call on a vertex that was in hyp and so the status has been assumed conformant ann
 			// we are in the case where the computed status and the hyp are in agreement.
 			while (! S.isEmpty()) {
-				Pair<RDFTerm,Label> key = S.pollFirst();
-				if (isNotComputed(key) && !hyp.contains(lowestReqHyp.get(key)))
+				long key = S.pollFirst();
+				Long lowestHyp = lowestReqHyp.get(key);
+				if (isNotComputed(key) && (lowestHyp == null || !hyp.contains(lowestHyp)))
 					// the key is ready to be saved
-					this.typing.setStatus(key.one, key.two, unsavedResults.get(key));
+					saveStatus(key, unsavedResults.get(key));
 				if (!isNotComputed(key))
 					// the key has been saved and we are now go through all the other vertex that was dependent of it
-					g.incomingEdgesOf(key).stream().map(edge -> g.getEdgeSource(edge))
-							.filter(dest -> isNotComputed(dest))
-							.forEach(dest -> S.add(dest));
+					for (long dest:g.getSources(key))
+						if (isNotComputed(dest))
+							S.add(dest);
 			}
 		} else {
 			// The result is in disagreement with the hypothesis. 
 			// So we removed all vertex that were assuming it to be true and save nothing
 			while (! S.isEmpty()) {
-				Pair<RDFTerm,Label> key = S.pollFirst();
-				g.incomingEdgesOf(key).forEach(edge -> S.add(g.getEdgeSource(edge)));
-				if (!key.equals(baseKey)) {
+				long key = S.pollFirst();
+				for (long source:g.getSources(key))
+					S.add(source);
+				if (key != baseKey) {
 					// I want to remove the baseKey vertex last to prevent some problem in the structure of the graph.
 					g.removeVertex(key);
-					notifyMatchingFound(key.one, key.two, null);
+					if (dependencies != null)
+						dependencies.removeVertex(key);
+					notifyMatchingFound(dictionary.getTermOfKey(key), dictionary.getLabelOfKey(key), null);
 				}
 			}
 			g.removeVertex(baseKey);
+			if (dependencies != null)
+				dependencies.removeVertex(baseKey);
 			notifyMatchingFound(focusNode, label, null);
 			
 		}
@@ -287,11 +537,14 @@ public class RecursiveValidationWithMemorization extends SORBEBasedValidation {
 	
 	protected void updateGraph(RDFTerm focusNode, Label label, Status valRes, Set<Pair<RDFTerm,Label>> required) {
 		
-		Pair<RDFTerm,Label> baseKey = new Pair<>(focusNode,label);
+		long baseKey = dictionary.getKey(focusNode,label);
 
 		boolean canSave = true;
-		for(Pair<RDFTerm,Label> depKey:required) {
-			if (this.typing.getStatus(depKey.one, depKey.two).equals(Status.NOTCOMPUTED)) {
+		for(Pair<RDFTerm,Label> dep:required) {
+			long depKey = dictionary.getKey(dep.one, dep.two);
+			if (dependencies != null)
+				dependencies.addEdge(baseKey, depKey);
+			if (this.typing.getStatus(dep.one, dep.two).equals(Status.NOTCOMPUTED)) {
 				// if not in typing, then it must be in the graph
 				canSave = false;
 
@@ -313,10 +566,10 @@ public class RecursiveValidationWithMemorization extends SORBEBasedValidation {
 					// It can happen if we have multiple required dependencies that have not been saved.
 					// We want to update it to the lowest hypo in the stach hyp.
 					if (lowestReqHyp.containsKey(depKey)) {
-						if (hyp.indexOf(lowestReqHyp.get(baseKey))>hyp.indexOf(lowestReqHyp.get(depKey))) 
+						if (hyp.depth(lowestReqHyp.get(baseKey))>hyp.depth(lowestReqHyp.get(depKey))) 
 							lowestReqHyp.put(baseKey, lowestReqHyp.get(depKey));						
 					} else { //depKey must be in hyp since it is not in typing and not in g
-						if (hyp.indexOf(lowestReqHyp.get(baseKey))>hyp.indexOf(depKey)) 
+						if (hyp.depth(lowestReqHyp.get(baseKey))>hyp.depth(depKey)) 
 							lowestReqHyp.put(baseKey, depKey);
 					}
 				}
@@ -328,63 +581,95 @@ public class RecursiveValidationWithMemorization extends SORBEBasedValidation {
 
 	}
 	
-	// ----------------------------------------------------------
-	// Utils
-	// ----------------------------------------------------------
 	
-	private Map<Triple, List<TripleConstraint>> computePreMatchingWithPredicateOnly(RDFTerm node, Shape shape) {
-		TripleExpr tripleExpression = this.sorbeGenerator.getSORBETripleExpr(shape);
-		List<TripleConstraint> constraints = collectorTC.getTCs(tripleExpression);		
-		List<Triple> neighbourhood = ValidationUtils.getMatchableNeighbourhood(graph, node, constraints, shape.isClosed());
-		
-		// Match using only predicate 
-		Matcher matcher = ValidationUtils.getPredicateOnlyMatcher();
-		Map<Triple,List<TripleConstraint>> matchingTC1 = 
-				ValidationUtils.computePreMatching(node, neighbourhood, constraints, shape.getExtraProperties(), matcher).getPreMatching();
-		return matchingTC1;
-	}
+	// -------------------------------------------
+	// Incremental validation
+	//--------------------------------------------
 	
-	// Very close to the normal recursive. The difference is in the stop in the case of a triple that can't be matched.
-	private boolean performRecursiveCallAndComputeLocalMatching(RDFTerm node,Shape shape,			
-			Map<Triple, List<TripleConstraint>> matchingTC1,
-			TypingForValidation resLocalTyping,
-			List<Triple> resTripleMatchedToExtra) throws Exception {
+	/** Updates the typing after a modification of the graph, without validating again the results that cannot have changed.
+	 * The triples must already have been added to or removed from the graph of the validator.
+	 * The results for the shapes whose neighbourhood contains one of the triples are invalidated, 
+	 * together with all the results that were computed using them, and only those results are computed again.
+	 * If the typing is shared with other validators, only the dependencies recorded by this validator are followed.
+	 * 
+	 * @param added the triples added to the graph
+	 * @param removed the triples removed from the graph
+	 * @return the pairs (node, label) whose status has changed
+	 * @throws IllegalStateException if the validator is not in incremental mode, see {@link #setIncremental(boolean)}
+	 * @throws Exception
+	 */
+	public Set<Pair<RDFTerm,Label>> revalidate(Collection<Triple> added, Collection<Triple> removed) throws Exception {
+		if (!incremental)
+			throw new IllegalStateException("The dependencies are recorded only in incremental mode.");
+		clearNeighbourhoodCache();
+		LinkedList<Long> toInvalidate = new LinkedList<>();
+		for (Triple triple:added)
+			collectAffectedPairs(triple, toInvalidate);
+		for (Triple triple:removed)
+			collectAffectedPairs(triple, toInvalidate);
 		
-		for(Triple curTr:matchingTC1.keySet()) {	
-			List<TripleConstraint> curLTCs = matchingTC1.get(curTr);
-			
-			boolean tripleCanBeMatched=false;
-			RDFTerm destNode=curLTCs.size()>0&&curLTCs.get(0).getProperty().isForward()? curTr.getObject():curTr.getSubject();
-
-			for (TripleConstraint tc:curLTCs) {
-				if (this.typing.getStatus(destNode, tc.getShapeExpr().getId()).equals(Status.NOTCOMPUTED)) {
-					if (this.recursiveValidation(destNode, tc.getShapeExpr().getId())) 
-						resLocalTyping.setStatus(destNode, tc.getShapeExpr().getId(),Status.CONFORMANT);
-					else 
-						resLocalTyping.setStatus(destNode, tc.getShapeExpr().getId(),Status.NONCONFORMANT);
-				} else 
-					resLocalTyping.setStatus(destNode, tc.getShapeExpr().getId(), typing.getStatus(destNode, tc.getShapeExpr().getId()));
-
-				tripleCanBeMatched = tripleCanBeMatched || resLocalTyping.isConformant(destNode, tc.getShapeExpr().getId());
-			}
-			
-			if (!tripleCanBeMatched) {
-				if (shape.getExtraProperties().contains(curTr.getPredicate())) {
-					resTripleMatchedToExtra.add(curTr);
-				} else {
-					// Looking at the calls that fails
-					Set<Pair<RDFTerm,Label>> required = matchingTC1.get(curTr).stream()
-							.map(tc->new Pair<>(destNode,tc.getShapeExpr().getId()))
-							.collect(Collectors.toSet());
-					updateGraph(node, shape.getId(), Status.NONCONFORMANT, required);
-					return false;
-				}
+		// invalidates the affected pairs and all the pairs that depend on them
+		Set<Long> visited = new HashSet<>();
+		List<Long> invalidated = new ArrayList<>();
+		LongObjectHashMap<Status> previousStatus = new LongObjectHashMap<>();
+		while (!toInvalidate.isEmpty()) {
+			long key = toInvalidate.pollFirst();
+			if (!visited.add(key))
+				continue;
+			if (!isNotComputed(key)) {
+				invalidated.add(key);
+				previousStatus.put(key, getStatus(key));
+				typing.removeNodeLabel(dictionary.getTermOfKey(key), dictionary.getLabelOfKey(key));
 			}
+			for (long dependent:dependencies.getSources(key))
+				toInvalidate.add(dependent);
+			// the dependencies of the pair are recorded again when it is computed
+			dependencies.removeVertex(key);
 		}
-		return true;
-
+		
+		// computes again the invalidated pairs, some of them are computed by the recursive calls of the previous ones
+		Set<Pair<RDFTerm,Label>> changed = new HashSet<>();
+		for (long key:invalidated) {
+			RDFTerm node = dictionary.getTermOfKey(key);
+			Label label = dictionary.getLabelOfKey(key);
+			boolean res = isNotComputed(key) ? performValidation(node, label) : typing.isConformant(node, label);
+			if (getStatus(res) != previousStatus.get(key))
+				changed.add(new Pair<>(node, label));
+		}
+		return changed;
 	}
 	
+	// The shapes whose neighbourhood can contain the triple are on the subject for the forward predicates and the closed shapes,
+	// and on the object for the inverse predicates.
+	private void collectAffectedPairs(Triple triple, List<Long> result) {
+		IRI predicate = triple.getPredicate();
+		for (Map.Entry<Label,ShapeExpr> entry:schema.getShapeExprsMap().entrySet()) {
+			if (!(entry.getValue() instanceof Shape))
+				continue;
+			Shape shape = (Shape) entry.getValue();
+			PredicateIndex index = compiledSchema.getPredicateIndex(shape);
+			if (shape.isClosed() || index.getForwardPredicates().contains(predicate))
+				addKeyIfKnown(triple.getSubject(), entry.getKey(), result);
+			if (index.getInversePredicates().contains(predicate))
+				addKeyIfKnown(triple.getObject(), entry.getKey(), result);
+		}
+	}
+	
+	private void addKeyIfKnown(RDFTerm node, Label label, List<Long> result) {
+		long key = dictionary.findKey(node, label);
+		if (key != Long.MIN_VALUE)
+			result.add(key);
+	}
+	
+	
+	// ----------------------------------------------------------
+	// Utils
+	// ----------------------------------------------------------
+	
+	private Map<Triple, List<TripleConstraint>> computePreMatchingWithPredicateOnly(RDFTerm node, Shape shape) {
+		// Match using only predicate 
+		return getPredicateOnlyPreMatching(node, shape).getPreMatching();
+	}
 	
 	private  RDFTerm getOther(Triple t, RDFTerm n){
 		if (t.getObject().equals(n))
@@ -393,16 +678,27 @@ public class RecursiveValidationWithMemorization extends SORBEBasedValidation {
 			return t.getObject();
 	}
 
-	private Label getShapeExprLabel(Label tcLabel) {
-		return ((TripleConstraint) schema.getTripleExprsMap().get(tcLabel)).getShapeExpr().getId();
-	}
-	
 	
 	private Status getStatus(boolean res) {
 		return res?Status.CONFORMANT:Status.NONCONFORMANT;
 	}
 	
-	private boolean isNotComputed(Pair<RDFTerm,Label> key) {
-		return this.typing.getStatus(key.one, key.two).equals(Status.NOTCOMPUTED);
+	private Status getStatus(long key) {
+		if (useDictionaryTyping)
+			return ((DictionaryTyping) this.typing).getStatus(key);
+		return this.typing.getStatus(dictionary.getTermOfKey(key), dictionary.getLabelOfKey(key));
+	}
+	
+	private boolean isNotComputed(long key) {
+		if (useDictionaryTyping)
+			return ((DictionaryTyping) this.typing).getStatus(key).equals(Status.NOTCOMPUTED);
+		return this.typing.getStatus(dictionary.getTermOfKey(key), dictionary.getLabelOfKey(key)).equals(Status.NOTCOMPUTED);
+	}
+	
+	private void saveStatus(long key, Status status) {
+		if (useDictionaryTyping)
+			((DictionaryTyping) this.typing).setStatus(key, status);
+		else
+			this.typing.setStatus(dictionary.getTermOfKey(key), dictionary.getLabelOfKey(key), status);
 	}
 }
@@ -16,14 +16,21 @@
  ******************************************************************************/
 package fr.inria.lille.shexjava.validation;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import org.apache.commons.rdf.api.BlankNodeOrIRI;
 import org.apache.commons.rdf.api.Graph;
+import org.apache.commons.rdf.api.Literal;
 import org.apache.commons.rdf.api.RDFTerm;
 import org.apache.commons.rdf.api.Triple;
 
@@ -37,14 +44,19 @@ import fr.inria.lille.shexjava.schema.abstrsynt.ShapeExprRef;
 import fr.inria.lille.shexjava.schema.abstrsynt.ShapeNot;
 import fr.inria.lille.shexjava.schema.abstrsynt.ShapeOr;
 import fr.inria.lille.shexjava.schema.abstrsynt.TripleConstraint;
-import fr.inria.lille.shexjava.schema.abstrsynt.TripleExpr;
+import fr.inria.lille.shexjava.shapeMap.BaseShapeMap;
+import fr.inria.lille.shexjava.shapeMap.ResultShapeMap;
+import fr.inria.lille.shexjava.shapeMap.abstrsynt.ShapeAssociation;
 import fr.inria.lille.shexjava.util.CommonGraph;
+import fr.inria.lille.shexjava.util.NodeEnumerator;
 import fr.inria.lille.shexjava.util.Pair;
 
 /** Implements the Refinement validation algorithm.
  * 
  * Refine validation systematically constructs a complete typing for all nodes in the graph and for a set of selected shape in the schema. See in typing for the selected shape.
  * It is therefore suited for cases when a complete typing is needed. The typing is computed at the first call of validate.
+ * In scoped mode, only the pairs (node, label) reachable from the validated pairs along the triple constraints of the schema are typed, 
+ * which is suited for checking a few focus nodes of a large graph.
  * 
  * @author Jérémie Dusart
  * @author Iovka Boneva
@@ -57,11 +69,40 @@ import fr.inria.lille.shexjava.util.Pair;
  */
 public class RefineValidation extends SORBEBasedValidation {
 	private boolean computed = false;
-	private TypingForValidation typing;
+	private MutableTyping typing;
+	private final boolean scoped;
+	private Map<Label,List<Pair<Label,TripleConstraint>>> referrers;
+	private NodeEnumerator nodes;
 
 	
 	public RefineValidation(ShexSchema schema, Graph graph) {
+		this(schema, graph, false);
+	}
+	
+	public RefineValidation(CompiledSchema compiledSchema, Graph graph) {
+		this(compiledSchema, graph, false);
+	}
+	
+	/** In scoped mode, a validation computes only the typing of the pairs that the validated pair depends on.
+	 * 
+	 * @param schema
+	 * @param graph
+	 * @param scoped
+	 */
+	public RefineValidation(ShexSchema schema, Graph graph, boolean scoped) {
 		super(schema,graph);
+		this.scoped = scoped;
+	}
+	
+	/** In scoped mode, a validation computes only the typing of the pairs that the validated pair depends on.
+	 * 
+	 * @param compiledSchema
+	 * @param graph
+	 * @param scoped
+	 */
+	public RefineValidation(CompiledSchema compiledSchema, Graph graph, boolean scoped) {
+		super(compiledSchema,graph);
+		this.scoped = scoped;
 	}
 
 	@Override
@@ -71,8 +112,25 @@ public class RefineValidation extends SORBEBasedValidation {
 	
 	@Override
 	public void resetTyping() {
-		this.typing = new TypingForValidation();
+		this.typing = new BitSetTyping();
 		computed = false;
+		nodes = null;
+		clearNeighbourhoodCache();
+	}
+	
+	/** Sets the enumerator of the nodes of the graph used to compute the complete typing, for instance one that uses an index of the backend.
+	 * By default, the nodes are collected by a scan of the graph at the first computation after a reset of the typing.
+	 * 
+	 * @param nodes
+	 */
+	public void setNodeEnumerator(NodeEnumerator nodes) {
+		this.nodes = nodes;
+	}
+	
+	private NodeEnumerator getNodes() {
+		if (nodes == null)
+			nodes = CommonGraph.getNodeEnumerator(graph);
+		return nodes;
 	}
 	
 	/** (non-Javadoc)
@@ -87,9 +145,27 @@ public class RefineValidation extends SORBEBasedValidation {
 	
 	
 	protected boolean performValidation(RDFTerm focusNode, Label label) throws Exception {
-		computeMaximalTyping(focusNode);
+		if (scoped && !computed)
+			computeScopedTyping(Collections.singleton(new Pair<>(focusNode, label)));
+		else
+			computeMaximalTyping(focusNode);
 		return typing.isConformant(focusNode, label);
 	}
+	
+	/** In scoped mode, the typing of all the pairs of the shape map is computed at once before the validation. */
+	@Override
+	public ResultShapeMap validate(BaseShapeMap shapeMap, ComputationController compController) throws Exception {
+		if (scoped && !computed) {
+			List<Pair<RDFTerm, Label>> roots = new ArrayList<>();
+			for (ShapeAssociation sa:shapeMap.getAssociations()) {
+				Label seLabel = sa.getShapeSelector().apply(schema);
+				for(RDFTerm node:sa.getNodeSelector().apply(graph))
+					roots.add(new Pair<>(node, seLabel));
+			}
+			computeScopedTyping(roots);
+		}
+		return super.validate(shapeMap, compController);
+	}
 
 
 
@@ -97,25 +173,11 @@ public class RefineValidation extends SORBEBasedValidation {
 		if (computed)
 			return;
 		// This will compute the typing for the shape only
-		for (int stratum = 0; stratum < schema.getStratification().size(); stratum++) {
-			List<Pair<RDFTerm, Label>> elements = addAllLabelsForStratum(stratum);		
-			boolean changed;
-			do {
-				changed = false;
-				Iterator<Pair<RDFTerm, Label>> typesIt = elements.iterator();
-				while (typesIt.hasNext()) {
-					Pair<RDFTerm, Label> nl = typesIt.next();
-					if (! satisfies(nl,true)) {
-						typesIt.remove();
-						typing.setStatus(nl.one, nl.two, Status.NONCONFORMANT);
-						changed = true;
-					}
-				}
-			} while (changed);
-		}
+		for (int stratum = 0; stratum < compiledSchema.getStratification().size(); stratum++)
+			refineStratum(stratum, addAllLabelsForStratum(stratum));
 		// This populate the typing with everything else
 		for (Label label:schema.getShapeExprsMap().keySet()) {
-			for (RDFTerm node : CommonGraph.getAllNodes(graph)) {		
+			for (RDFTerm node : getNodes()) {		
 				if (satisfies(new Pair<>(node, label),false)) {
 					typing.setStatus(node, label, Status.CONFORMANT);
 				} else {
@@ -125,6 +187,54 @@ public class RefineValidation extends SORBEBasedValidation {
 		}
 		computed = true;
 	}
+	
+	// Computes the typing of the pairs reachable from the roots that are not typed yet.
+	// A typed pair was computed with all the pairs it depends on, so its status is final.
+	private void computeScopedTyping(Collection<Pair<RDFTerm, Label>> roots) throws Exception {
+		Set<Pair<RDFTerm, Label>> reachable = collectReachableShapePairs(roots);
+		for (int stratum = 0; stratum < compiledSchema.getStratification().size(); stratum++) {
+			Set<Label> labels = compiledSchema.getStratification().get(stratum);
+			List<Pair<RDFTerm, Label>> elements = new ArrayList<>();
+			for (Pair<RDFTerm, Label> nl:reachable) {
+				if (labels.contains(nl.two)) {
+					elements.add(nl);
+					typing.setStatus(nl.one, nl.two, Status.CONFORMANT);
+				}
+			}
+			if (!elements.isEmpty())
+				refineStratum(stratum, elements);
+		}
+		// the roots whose label is not a shape are evaluated using the typing of the shapes
+		for (Pair<RDFTerm, Label> root:roots)
+			if (typing.getStatus(root.one, root.two).equals(Status.NOTCOMPUTED))
+				typing.setStatus(root.one, root.two, satisfies(root,false)?Status.CONFORMANT:Status.NONCONFORMANT);
+	}
+	
+	// The elements are conformant in the typing, the ones that do not satisfy their shape are removed until the typing is stable.
+	private void refineStratum(int stratum, List<Pair<RDFTerm, Label>> elements) throws Exception {
+		Map<Label,List<Pair<Label,TripleConstraint>>> referrers = getReferrers();
+		Set<Label> labels = compiledSchema.getStratification().get(stratum);
+		// the pairs of the worklist are conformant in the typing and have to be checked again
+		Deque<Pair<RDFTerm, Label>> worklist = new ArrayDeque<>(elements);
+		Set<Pair<RDFTerm, Label>> queued = new HashSet<>(worklist);
+		while (!worklist.isEmpty()) {
+			Pair<RDFTerm, Label> nl = worklist.pollFirst();
+			queued.remove(nl);
+			if (! satisfies(nl,true)) {
+				typing.setStatus(nl.one, nl.two, Status.NONCONFORMANT);
+				// only the pairs that can use nl through a triple constraint have to be checked again
+				for (Pair<Label,TripleConstraint> ref:referrers.getOrDefault(nl.two, Collections.emptyList())) {
+					if (!labels.contains(ref.one))
+						continue;
+					for (RDFTerm node:getReferringNodes(nl.one, ref.two)) {
+						Pair<RDFTerm, Label> dependent = new Pair<>(node, ref.one);
+						if (typing.isConformant(node, ref.one) && queued.add(dependent))
+							worklist.addLast(dependent);
+					}
+				}
+			}
+		}
+	}
 
 	/** Tests whether the node satisfies the shape expresion with specified label and with the current typing 
 	 *  If validateShape is set to true, then the typing will not be used
@@ -141,14 +251,10 @@ public class RefineValidation extends SORBEBasedValidation {
 	 * @throws Exception */
 	private boolean matches (RDFTerm node, Shape shape) throws Exception {
 		// Since the algorithm first computing the typing with the shape only, in the same fashion as for the recursive algorithm, a localtyping must be computed without any cal to compute shape.
-		TripleExpr tripleExpression = this.sorbeGenerator.getSORBETripleExpr(shape);
-		List<TripleConstraint> constraints = collectorTC.getTCs(tripleExpression);	
-		List<Triple> neighbourhood = ValidationUtils.getMatchableNeighbourhood(graph, node, constraints, shape.isClosed());
-
 		// Match using only predicate and recursive test. The following lines is the only big difference with refine validation. 
 		TypingForValidation localTyping = new TypingForValidation();
 		
-		PreMatching preMatching = ValidationUtils.computePreMatching(node, neighbourhood, constraints, shape.getExtraProperties(), ValidationUtils.getPredicateOnlyMatcher());
+		PreMatching preMatching = getPredicateOnlyPreMatching(node, shape);
 		Map<Triple,List<TripleConstraint>> matchingTC1 = preMatching.getPreMatching();
 			
 		for(Entry<Triple,List<TripleConstraint>> entry:matchingTC1.entrySet()) {		
@@ -167,7 +273,7 @@ public class RefineValidation extends SORBEBasedValidation {
 				}
 			}
 		}
-		return this.findMatching(node, shape, localTyping).getMatching() != null;
+		return this.findMatching(node, shape, localTyping).hasMatching();
 	}	
 	
 
@@ -242,13 +348,108 @@ public class RefineValidation extends SORBEBasedValidation {
 	}
 
 
+	// Dependencies utils
+	
+	// The pairs (node, shape label) that are not typed yet and that the typing of the roots depends on.
+	// A shape on a node depends on the shapes used by its triple constraints on the neighbours of the node.
+	private Set<Pair<RDFTerm, Label>> collectReachableShapePairs(Collection<Pair<RDFTerm, Label>> roots) {
+		Set<Pair<RDFTerm, Label>> result = new HashSet<>();
+		Deque<Pair<RDFTerm, Label>> toVisit = new ArrayDeque<>();
+		for (Pair<RDFTerm, Label> root:roots) {
+			Set<Label> used = new HashSet<>();
+			collectUsedShapes(schema.getShapeExprsMap().get(root.two), used);
+			for (Label label:used)
+				toVisit.add(new Pair<>(root.one, label));
+		}
+		while (!toVisit.isEmpty()) {
+			Pair<RDFTerm, Label> nl = toVisit.pollFirst();
+			if (!typing.getStatus(nl.one, nl.two).equals(Status.NOTCOMPUTED) || !result.add(nl))
+				continue;
+			Shape shape = (Shape) schema.getShapeExprsMap().get(nl.two);
+			for (TripleConstraint tc:compiledSchema.getPredicateIndex(shape).getConstraints()) {
+				Set<Label> used = new HashSet<>();
+				collectUsedShapes(tc.getShapeExpr(), used);
+				for (RDFTerm node:getReferencedNodes(nl.one, tc))
+					for (Label label:used)
+						toVisit.add(new Pair<>(node, label));
+			}
+		}
+		return result;
+	}
+	
+	private Map<Label,List<Pair<Label,TripleConstraint>>> getReferrers() {
+		if (referrers == null)
+			referrers = computeReferrers();
+		return referrers;
+	}
+	
+	// For every shape label, the shapes with a triple constraint whose shape expression uses the typing of this label.
+	// The shape expression of a triple constraint uses the typing of the shapes it contains, except in the triple expressions of these shapes.
+	private Map<Label,List<Pair<Label,TripleConstraint>>> computeReferrers() {
+		Map<Label,List<Pair<Label,TripleConstraint>>> result = new HashMap<>();
+		for (Set<Label> labels:compiledSchema.getStratification().values()) {
+			for (Label label:labels) {
+				Shape shape = (Shape) schema.getShapeExprsMap().get(label);
+				for (TripleConstraint tc:compiledSchema.getPredicateIndex(shape).getConstraints()) {
+					Set<Label> used = new HashSet<>();
+					collectUsedShapes(tc.getShapeExpr(), used);
+					for (Label usedLabel:used) {
+						if (!result.containsKey(usedLabel))
+							result.put(usedLabel, new ArrayList<>());
+						result.get(usedLabel).add(new Pair<>(label, tc));
+					}
+				}
+			}
+		}
+		return result;
+	}
+	
+	private void collectUsedShapes(ShapeExpr expr, Set<Label> result) {
+		if (expr instanceof Shape)
+			result.add(expr.getId());
+		if (expr instanceof ShapeAnd)
+			for (ShapeExpr sub:((ShapeAnd) expr).getSubExpressions())
+				collectUsedShapes(sub, result);
+		if (expr instanceof ShapeOr)
+			for (ShapeExpr sub:((ShapeOr) expr).getSubExpressions())
+				collectUsedShapes(sub, result);
+		if (expr instanceof ShapeNot)
+			collectUsedShapes(((ShapeNot) expr).getSubExpression(), result);
+		if (expr instanceof ShapeExprRef)
+			collectUsedShapes(((ShapeExprRef) expr).getShapeDefinition(), result);
+	}
+	
+	// The nodes at the other end of the triples of the node that can be matched to the triple constraint
+	private List<RDFTerm> getReferencedNodes(RDFTerm node, TripleConstraint tc) {
+		List<RDFTerm> result = new ArrayList<>();
+		if (!tc.getProperty().isForward()) {
+			graph.stream(null, tc.getProperty().getIri(), node).forEach(triple -> result.add(triple.getSubject()));
+		} else if (!(node instanceof Literal)) {
+			graph.stream((BlankNodeOrIRI) node, tc.getProperty().getIri(), null).forEach(triple -> result.add(triple.getObject()));
+		}
+		return result;
+	}
+	
+	// The nodes that can be matched to the triple constraint with a triple whose other end is the given node
+	private List<RDFTerm> getReferringNodes(RDFTerm node, TripleConstraint tc) {
+		List<RDFTerm> result = new ArrayList<>();
+		if (tc.getProperty().isForward()) {
+			graph.stream(null, tc.getProperty().getIri(), node).forEach(triple -> result.add(triple.getSubject()));
+		} else if (!(node instanceof Literal)) {
+			graph.stream((BlankNodeOrIRI) node, tc.getProperty().getIri(), null).forEach(triple -> result.add(triple.getObject()));
+		}
+		return result;
+	}
+	
+	
 	// Typing utils
 
 	private List<Pair<RDFTerm, Label>> addAllLabelsForStratum(int stratum) {
-		ArrayList<Pair<RDFTerm, Label>> result = new ArrayList<>();
-		Set<Label> labels = schema.getStratification().get(stratum); 
+		Set<Label> labels = compiledSchema.getStratification().get(stratum); 
+		NodeEnumerator nodes = getNodes();
+		ArrayList<Pair<RDFTerm, Label>> result = new ArrayList<>((int) Math.min(Integer.MAX_VALUE - 8, (long) labels.size() * nodes.getNbNodes()));
 		for (Label label: labels) {
-			for (RDFTerm node : CommonGraph.getAllNodes(graph)) {		
+			for (RDFTerm node : nodes) {		
 				result.add(new Pair<>(node, label));
 				this.typing.setStatus(node, label, Status.CONFORMANT);
 			}
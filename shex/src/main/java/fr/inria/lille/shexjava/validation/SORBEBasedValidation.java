@@ -16,9 +16,14 @@
  ******************************************************************************/
 package fr.inria.lille.shexjava.validation;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 import org.apache.commons.rdf.api.Graph;
 import org.apache.commons.rdf.api.RDFTerm;
@@ -28,18 +33,136 @@ import fr.inria.lille.shexjava.schema.Label;
 import fr.inria.lille.shexjava.schema.ShexSchema;
 import fr.inria.lille.shexjava.schema.abstrsynt.Shape;
 import fr.inria.lille.shexjava.schema.abstrsynt.TripleConstraint;
-import fr.inria.lille.shexjava.schema.abstrsynt.TripleExpr;
+import fr.inria.lille.shexjava.util.GraphNeighbourhoodProvider;
+import fr.inria.lille.shexjava.util.NeighbourhoodProvider;
 
 /** This class implement the algorithm to find a matching based on SORBE.
  * @author jdusart
  *
  */
 public abstract class SORBEBasedValidation extends ValidationAlgorithmAbstract {
+	public static final int DEFAULT_NEIGHBOURHOOD_CACHE_SIZE = 4096;
+	
+	protected final CompiledSchema compiledSchema;
+	/** @deprecated the SORBE versions of the triple expressions are in {@link #getCompiledSchema()}, this generator is the one of the compiled schema */
+	@Deprecated
 	protected SORBEGenerator sorbeGenerator;
+	protected NeighbourhoodProvider neighbourhoodProvider;
+	// the neighbourhoods by shape label of the nodes recently checked during the current validation, in access order, null if the cache is disabled
+	private Map<RDFTerm,Map<Label,CachedNeighbourhood>> neighbourhoodCache;
 	
 	public SORBEBasedValidation(ShexSchema schema, Graph graph) {
-		super(schema,graph);
-		this.sorbeGenerator = new SORBEGenerator(schema.getRdfFactory());
+		this(new CompiledSchema(schema), graph);
+	}
+	
+	/** Uses a compiled schema that can be shared with other validators.
+	 * 
+	 * @param compiledSchema
+	 * @param graph
+	 */
+	public SORBEBasedValidation(CompiledSchema compiledSchema, Graph graph) {
+		super(compiledSchema.getSchema(),graph);
+		this.compiledSchema = compiledSchema;
+		this.sorbeGenerator = compiledSchema.getSORBEGenerator();
+		this.neighbourhoodProvider = new GraphNeighbourhoodProvider(graph);
+		this.neighbourhoodCache = createNeighbourhoodCache(DEFAULT_NEIGHBOURHOOD_CACHE_SIZE);
+	}
+	
+	/** The compiled schema used by the validation, which can be shared with other validators. */
+	public CompiledSchema getCompiledSchema() {
+		return compiledSchema;
+	}
+	
+	/** Sets how the neighbourhoods of the nodes are fetched from the graph, for instance with a bulk access of the backend.
+	 * 
+	 * @param neighbourhoodProvider
+	 */
+	public void setNeighbourhoodProvider(NeighbourhoodProvider neighbourhoodProvider) {
+		this.neighbourhoodProvider = neighbourhoodProvider;
+		clearNeighbourhoodCache();
+	}
+	
+	/** Sets the maximal number of nodes whose neighbourhoods and pre-matchings with the predicates are kept between the steps of a validation. 
+	 * The cache is cleared at the beginning of every validation, so the graph can be modified between two validations.
+	 * 
+	 * @param size the size of the cache, 0 to disable it
+	 */
+	public void setNeighbourhoodCacheSize(int size) {
+		if (size < 0)
+			throw new IllegalArgumentException("Invalid argument value: the size of the cache cannot be negative.");
+		this.neighbourhoodCache = size == 0 ? null : createNeighbourhoodCache(size);
+	}
+	
+	// the validator is used by one thread at a time, the cache is not synchronized
+	private static Map<RDFTerm,Map<Label,CachedNeighbourhood>> createNeighbourhoodCache(int maxSize) {
+		return new LinkedHashMap<RDFTerm,Map<Label,CachedNeighbourhood>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<RDFTerm,Map<Label,CachedNeighbourhood>> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+	
+	/** Clears the cached neighbourhoods, which must be done when the graph is modified. */
+	protected void clearNeighbourhoodCache() {
+		// called by resetTyping during the construction, before the cache is created
+		if (neighbourhoodCache != null)
+			neighbourhoodCache.clear();
+	}
+	
+	/** Clears the cached neighbourhoods before the validation, see {@link #setNeighbourhoodCacheSize(int)}. */
+	@Override
+	public boolean validate(RDFTerm focusNode, Label label, ComputationController compController) throws Exception {
+		clearNeighbourhoodCache();
+		return super.validate(focusNode, label, compController);
+	}
+	
+	/** The matchable neighbourhood of the node for the shape. The graph is queried once for all the uses of the same pair during a validation, as long as it is in the cache. */
+	protected List<Triple> getNeighbourhood(RDFTerm node, Shape shape) {
+		return getCachedNeighbourhood(node, shape).triples;
+	}
+	
+	/** The pre-matching of the neighbourhood of the node for the shape using only the predicates of the triple constraints. */
+	protected PreMatching getPredicateOnlyPreMatching(RDFTerm node, Shape shape) {
+		CachedNeighbourhood cached = getCachedNeighbourhood(node, shape);
+		if (cached.predicateOnly == null) {
+			PredicateIndex index = this.compiledSchema.getPredicateIndex(shape);
+			cached.predicateOnly = ValidationUtils.computePreMatching(node, cached.triples, index, shape.getExtraProperties(), ValidationUtils.getPredicateOnlyMatcher());
+		}
+		return cached.predicateOnly;
+	}
+	
+	private CachedNeighbourhood getCachedNeighbourhood(RDFTerm node, Shape shape) {
+		Map<Label,CachedNeighbourhood> byShape = null;
+		if (neighbourhoodCache != null) {
+			byShape = neighbourhoodCache.get(node);
+			if (byShape != null) {
+				CachedNeighbourhood cached = byShape.get(shape.getId());
+				if (cached != null)
+					return cached;
+			}
+		}
+		PredicateIndex index = this.compiledSchema.getPredicateIndex(shape);
+		CachedNeighbourhood cached = new CachedNeighbourhood(ValidationUtils.getMatchableNeighbourhood(neighbourhoodProvider, node, index, shape.isClosed()));
+		if (neighbourhoodCache != null) {
+			if (byShape == null) {
+				byShape = new HashMap<>(4);
+				neighbourhoodCache.put(node, byShape);
+			}
+			byShape.put(shape.getId(), cached);
+		}
+		return cached;
+	}
+	
+	private static class CachedNeighbourhood {
+		private final List<Triple> triples;
+		private PreMatching predicateOnly;
+		
+		CachedNeighbourhood(List<Triple> triples) {
+			this.triples = triples;
+		}
 	}
 	
 	/** Try to find a matching for the shape on the node using the typing. See also the MatchingCollector or FailureReportsCollecto.
@@ -51,37 +174,93 @@ public abstract class SORBEBasedValidation extends ValidationAlgorithmAbstract {
 	 * @throws Exception 
 	 */
 	protected LocalMatching findMatching (RDFTerm node, Shape shape, Typing typing) throws Exception {
-		TripleExpr tripleExpression = this.sorbeGenerator.getSORBETripleExpr(shape);
-		List<TripleConstraint> constraints = collectorTC.getTCs(tripleExpression);
-		List<Triple> neighbourhood = ValidationUtils.getMatchableNeighbourhood(graph, node, constraints, shape.isClosed());
-		PreMatching preMatching = ValidationUtils.computePreMatching(node, neighbourhood, constraints, shape.getExtraProperties(), ValidationUtils.getPredicateAndValueMatcher(typing));
+		PredicateIndex index = this.compiledSchema.getPredicateIndex(shape);
+		List<Triple> neighbourhood = getNeighbourhood(node, shape);
+		PreMatching preMatching = ValidationUtils.computePreMatching(node, neighbourhood, index, shape.getExtraProperties(), ValidationUtils.getPredicateAndValueMatcher(typing));
 		
-		LocalMatching result = null;
+		Map<Triple, TripleConstraint> found = null;
 		// Look for correct matching within the pre-matching
-		if (preMatching.getUnmatched().size()==0) {
-			BagIterator bagIt = new BagIterator(preMatching);
-			IntervalComputation intervalComputation = new IntervalComputation(this.collectorTC);
-			while(result==null && bagIt.hasNext()){
+		if (preMatching.getUnmatched().size()==0 && preMatching.hasSingleCandidates()) {
+			// a unique assignment, checked directly
+			if (this.compController != null) compController.canContinue();
+			MatchingSearch search = this.compiledSchema.getMatchingSearch(shape);
+			if (search.isMatching(preMatching, new IntervalComputation(this.compiledSchema)))
+				found = new SingleCandidateMatching(preMatching.getPreMatching());
+		} else if (preMatching.getUnmatched().size()==0) {
+			FlowMatchingSearch flowSearch = this.compiledSchema.getFlowMatchingSearch(shape);
+			if (flowSearch != null) {
 				if (this.compController != null) compController.canContinue();
-				Bag bag = bagIt.next();
-				tripleExpression.accept(intervalComputation, bag, this);
-				if (intervalComputation.getResult().contains(1)) {
-					Map<Triple, Label> matching = bagIt.getCurrentBag();
-					matching = matching.entrySet().stream()
-							.collect(Collectors.toMap(x -> x.getKey(), x -> sorbeGenerator.getOriginalNonsorbeVersion(x.getValue())));
-					result = new LocalMatching(matching, preMatching.getMatchedToExtra(), preMatching.getUnmatched());
-					notifyMatchingFound(node, shape.getId(), result);
-				}
-
+				found = flowSearch.findMatching(preMatching);
+			} else {
+				MatchingSearch search = this.compiledSchema.getMatchingSearch(shape);
+				IntervalComputation intervalComputation = new IntervalComputation(this.compiledSchema);
+				found = search.findMatching(preMatching, intervalComputation, this.compController);
 			}
 		}		
 
-		if (result == null) {
+		LocalMatching result;
+		if (found != null)
+			// the labels of the original triple constraints are computed only if the matching is used
+			result = LocalMatching.lazy(found, tc -> SORBEGenerator.getOriginalNonsorbeVersion(tc).getId(), 
+										preMatching.getMatchedToExtra(), preMatching.getUnmatched());
+		else
 			result = new LocalMatching(null, preMatching.getMatchedToExtra(), preMatching.getUnmatched());
-			notifyMatchingFound(node, shape.getId(), null);
-		}
+		if (hasMatchingObservers())
+			notifyMatchingFound(node, shape.getId(), found != null ? result : null);
 		
 		return result;
 	}
 	
+	/** A view of a pre-matching in which every triple has a single candidate as a matching. */
+	private static class SingleCandidateMatching extends AbstractMap<Triple, TripleConstraint> {
+		private final Map<Triple, List<TripleConstraint>> preMatching;
+		
+		SingleCandidateMatching(Map<Triple, List<TripleConstraint>> preMatching) {
+			this.preMatching = preMatching;
+		}
+		
+		@Override
+		public TripleConstraint get(Object key) {
+			List<TripleConstraint> candidates = preMatching.get(key);
+			return candidates == null ? null : candidates.get(0);
+		}
+		
+		@Override
+		public boolean containsKey(Object key) {
+			return preMatching.containsKey(key);
+		}
+		
+		@Override
+		public int size() {
+			return preMatching.size();
+		}
+		
+		@Override
+		public Set<Map.Entry<Triple, TripleConstraint>> entrySet() {
+			return new AbstractSet<Map.Entry<Triple, TripleConstraint>>() {
+				@Override
+				public Iterator<Map.Entry<Triple, TripleConstraint>> iterator() {
+					Iterator<Map.Entry<Triple, List<TripleConstraint>>> it = preMatching.entrySet().iterator();
+					return new Iterator<Map.Entry<Triple, TripleConstraint>>() {
+						@Override
+						public boolean hasNext() {
+							return it.hasNext();
+						}
+
+						@Override
+						public Map.Entry<Triple, TripleConstraint> next() {
+							Map.Entry<Triple, List<TripleConstraint>> e = it.next();
+							return new AbstractMap.SimpleImmutableEntry<>(e.getKey(), e.getValue().get(0));
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return preMatching.size();
+				}
+			};
+		}
+	}
+	
 }
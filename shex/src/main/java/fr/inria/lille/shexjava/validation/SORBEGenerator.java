@@ -47,10 +47,12 @@ public class SORBEGenerator {
 	public static final String SORBE_TRIPLE_LABEL_SUFFIXE = "_SORBE_";
 	
 	private Map<Label,TripleExpr> sorbeMap;
+	private Map<Label,Label> originalLabels;
 	
 	public SORBEGenerator(RDF rdfFactory) {
 		this.rdfFactory=rdfFactory;
 		this.sorbeMap=new HashMap<>();
+		this.originalLabels=new HashMap<>();
 	}
 	
 	
@@ -70,19 +72,22 @@ public class SORBEGenerator {
 	
 	/** Returns the label of the original expression for which the expression with the given label is the sorbe version.
 	 * 
-	 * @param label
-	 * @return
+	 * @param label the label of an expression generated by this generator
+	 * @return the label of the original expression, or label itself if it was not generated by this generator
 	 */
-	// TODO this is only used for triple constraints. Make it work with triple constraints only ? 
-	// In any case, base this on a manipulation of the labels is weird
-	// The labels are used as unique identifiers, and this is "secure" only if all expressions are generated by a factory
 	public Label getOriginalNonsorbeVersion(Label label) {
-		if (label.isBlankNode()) {
-			return new Label(rdfFactory.createBlankNode(label.stringValue().split(SORBE_TRIPLE_LABEL_SUFFIXE)[0].substring(2)),
-													label.isGenerated());
-		}
-		return new Label(rdfFactory.createIRI(label.stringValue().split(SORBE_TRIPLE_LABEL_SUFFIXE)[0]),
-											  label.isGenerated());
+		return this.originalLabels.getOrDefault(label, label);
+	}
+	
+	/** Returns the triple constraint of the schema for which the given triple constraint is the sorbe version.
+	 * 
+	 * @param tc a triple constraint of a SORBE triple expression
+	 * @return the original triple constraint, or tc itself if it is not a copy
+	 */
+	public static TripleConstraint getOriginalNonsorbeVersion(TripleConstraint tc) {
+		if (tc instanceof SORBETripleConstraint)
+			return ((SORBETripleConstraint) tc).getOriginal();
+		return tc;
 	}
 	
 	private GeneratorOfTripleExpr generatorTE = new GeneratorOfTripleExpr();
@@ -97,7 +102,7 @@ public class SORBEGenerator {
 
 		@Override
 		public void visitTripleConstraint(TripleConstraint tc, Object... arguments) {
-			result = tc.clone();
+			result = new SORBETripleConstraint(tc);
 			setTripleLabel(result,tc);			
 		}
 
@@ -196,6 +201,8 @@ public class SORBEGenerator {
 		if (oldTriple.getId().isIri())
 			newTriple.setId(new Label(rdfFactory.createIRI(oldTriple.getId().stringValue()+SORBE_TRIPLE_LABEL_SUFFIXE+tripleLabelNb),
 									  oldTriple.getId().isGenerated()));
+		// a copy of a generated expression has the same original as the expression
+		originalLabels.put(newTriple.getId(), originalLabels.getOrDefault(oldTriple.getId(), oldTriple.getId()));
 		tripleLabelNb++;
 	}
 	
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.validation;
+
+import fr.inria.lille.shexjava.schema.abstrsynt.TripleConstraint;
+
+/** A copy of a triple constraint of the schema created by the {@link SORBEGenerator}, that keeps a reference to the original triple constraint.
+ * 
+ */
+public class SORBETripleConstraint extends TripleConstraint {
+	private final TripleConstraint original;
+	
+	public SORBETripleConstraint(TripleConstraint original) {
+		super(original.getProperty(), original.getShapeExpr());
+		this.original = original;
+	}
+	
+	/** The triple constraint of the schema of which this is a copy. */
+	public TripleConstraint getOriginal() {
+		return original;
+	}
+	
+	@Override
+	public TripleConstraint clone() {
+		return new SORBETripleConstraint(original);
+	}
+}
@@ -33,7 +33,7 @@ import fr.inria.lille.shexjava.util.Pair;
  *
  */
 // TODO: need for a typing class specific for the different alogithms: refine validation and recursive validation do not have the same needs
-public class TypingForValidation implements Typing {
+public class TypingForValidation implements MutableTyping {
 	private Map<Pair<RDFTerm,Label>,Status> status;
 	
 	private Map<Label,Set<RDFTerm>> nodes;
@@ -44,8 +44,6 @@ public abstract class ValidationAlgorithmAbstract implements ValidationAlgorithm
 	protected ShexSchema schema;
 	protected ComputationController compController;
 	
-	protected DynamicCollectorOfTripleConstraints collectorTC;
-	
 	private Set<MatchingCollector> matchingObservers;
 
 	
@@ -61,7 +59,6 @@ public abstract class ValidationAlgorithmAbstract implements ValidationAlgorithm
 
 		resetTyping();
 
-		this.collectorTC = new DynamicCollectorOfTripleConstraints();
 		this.matchingObservers = new HashSet<>();
 	}
 
@@ -156,6 +153,11 @@ public abstract class ValidationAlgorithmAbstract implements ValidationAlgorithm
 			m.validationComplete();
 	}
 	
+	/** Tests whether a {@link MatchingCollector} is registered, in which case the matchings have to be computed. */
+	protected boolean hasMatchingObservers() {
+		return !matchingObservers.isEmpty();
+	}
+	
 	@Override
 	public void addMatchingObserver(MatchingCollector o) {
 		matchingObservers.add(o);
@@ -14,8 +14,11 @@ import org.apache.commons.rdf.api.RDFTerm;
 import org.apache.commons.rdf.api.Triple;
 
 import fr.inria.lille.shexjava.schema.Label;
+import fr.inria.lille.shexjava.schema.abstrsynt.TCProperty;
 import fr.inria.lille.shexjava.schema.abstrsynt.TripleConstraint;
 import fr.inria.lille.shexjava.util.CommonGraph;
+import fr.inria.lille.shexjava.util.GraphNeighbourhoodProvider;
+import fr.inria.lille.shexjava.util.NeighbourhoodProvider;
 
 /** Contains static methods useful in the different validation alogorithms.
  * 
@@ -59,6 +62,30 @@ public class ValidationUtils {
 		return neighbourhood;
 	}
 	
+	/** Select the neighborhood that must be matched for the shape with the given index.
+	 * 
+	 * @param graph
+	 * @param node
+	 * @param index
+	 * @param shapeIsClosed
+	 * @return
+	 */
+	public static List<Triple> getMatchableNeighbourhood(Graph graph, RDFTerm node, PredicateIndex index, boolean shapeIsClosed) {
+		return getMatchableNeighbourhood(new GraphNeighbourhoodProvider(graph), node, index, shapeIsClosed);
+	}
+	
+	/** Select the neighborhood that must be matched for the shape with the given index, fetched in a single request to the provider.
+	 * 
+	 * @param provider
+	 * @param node
+	 * @param index
+	 * @param shapeIsClosed
+	 * @return
+	 */
+	public static List<Triple> getMatchableNeighbourhood(NeighbourhoodProvider provider, RDFTerm node, PredicateIndex index, boolean shapeIsClosed) {
+		return provider.getNeighbourhood(node, shapeIsClosed ? null : index.getForwardPredicates(), index.getInversePredicates());
+	}
+	
 	public static PreMatching computePreMatching(RDFTerm focusNode, List<Triple> neighbourhood, 
 							List<TripleConstraint> tripleConstraints, Set<IRI> extraProperties, Matcher matcher) {
 		
@@ -85,6 +112,46 @@ public class ValidationUtils {
 		return new PreMatching(matchingTriplesMap, matchedToExtraTriples, unmatchedTriples);
 	}
 	
+	/** Computes the pre-matching using the index of the triple constraints of the shape.
+	 * The matcher is applied only to the triple constraints that have the predicate of the triple and a direction compatible with the position of the focus node.
+	 * 
+	 * @param focusNode
+	 * @param neighbourhood
+	 * @param index
+	 * @param extraProperties
+	 * @param matcher
+	 * @return
+	 */
+	public static PreMatching computePreMatching(RDFTerm focusNode, List<Triple> neighbourhood, 
+							PredicateIndex index, Set<IRI> extraProperties, Matcher matcher) {
+		
+		LinkedHashMap<Triple,List<TripleConstraint>> matchingTriplesMap = new LinkedHashMap<>(neighbourhood.size());
+		ArrayList<Triple> matchedToExtraTriples = new ArrayList<>();
+		ArrayList<Triple> unmatchedTriples = new ArrayList<>();
+
+		for (Triple triple: neighbourhood) {
+			List<TripleConstraint> candidates = index.getCandidates(focusNode, triple);
+			ArrayList<TripleConstraint> matching;
+			if (matcher == predicateOnlyMatcher) {
+				// the candidates are exactly the triple constraints matched with the predicate only
+				matching = new ArrayList<>(candidates);
+			} else {
+				matching = new ArrayList<>(candidates.size());
+				for (TripleConstraint tc: candidates) 
+					if (matcher.apply(focusNode, triple, tc)) 
+						matching.add(tc);
+			}
+			if (! matching.isEmpty()) 
+				matchingTriplesMap.put(triple, matching);
+			else if (extraProperties.contains(triple.getPredicate())) 
+				matchedToExtraTriples.add(triple);
+			else
+				unmatchedTriples.add(triple);
+		}
+		
+		return new PreMatching(matchingTriplesMap, matchedToExtraTriples, unmatchedTriples);
+	}
+	
 	/** Produces a map that with every triple constraint in the given list of triple constarints associates all the triples matched with this triple constraint in the given pre-matching.
 	 * 
 	 * @param preMatching
@@ -116,15 +183,32 @@ public class ValidationUtils {
 		return result;
 	}
 
+	/** Tests whether two terms are the same RDF term.
+	 * 
+	 * IRIs are compared by {@link Object#equals}, which is specified across the implementations of commons-rdf.
+	 * The equality of blank nodes and literals may depend on the implementation, so the N-Triples strings of two such terms of different classes are compared when they are not equal.
+	 * 
+	 * @param t1
+	 * @param t2
+	 * @return true if the terms are the same
+	 */
+	public static boolean sameTerm(RDFTerm t1, RDFTerm t2) {
+		if (t1 == t2)
+			return true;
+		if (t1.equals(t2))
+			return true;
+		if (t1 instanceof IRI || t2 instanceof IRI)
+			return false;
+		return t1.getClass() != t2.getClass() && t1.ntriplesString().equals(t2.ntriplesString());
+	}
+	
 	private static Matcher predicateOnlyMatcher = new Matcher() {
 		@Override
 		public boolean apply(RDFTerm focusNode, Triple triple, TripleConstraint tc) {
-			if (tc.getProperty().isForward() && triple.getSubject().ntriplesString().equals(focusNode.ntriplesString())) {
-				return tc.getProperty().getIri().ntriplesString().equals(triple.getPredicate().ntriplesString());
-			}
-			if (!tc.getProperty().isForward() && triple.getObject().ntriplesString().equals(focusNode.ntriplesString()))
-				return tc.getProperty().getIri().ntriplesString().equals(triple.getPredicate().ntriplesString());
-			return false;
+			TCProperty property = tc.getProperty();
+			if (!sameTerm(property.getIri(), triple.getPredicate()))
+				return false;
+			return sameTerm(property.isForward() ? triple.getSubject() : triple.getObject(), focusNode);
 		}
 	};
 	
@@ -137,13 +221,12 @@ public class ValidationUtils {
 		
 		@Override
 		public boolean apply(RDFTerm focusNode, Triple triple, TripleConstraint tc) {
-			if (tc.getProperty().isForward() && triple.getSubject().ntriplesString().equals(focusNode.ntriplesString()))
-				if (tc.getProperty().getIri().ntriplesString().equals(triple.getPredicate().ntriplesString())) 
-					return shapeMap.isConformant(triple.getObject(), tc.getShapeExpr().getId());
-			if (!tc.getProperty().isForward() && triple.getObject().ntriplesString().equals(focusNode.ntriplesString()))
-				if (tc.getProperty().getIri().ntriplesString().equals(triple.getPredicate().ntriplesString())) 
-					return shapeMap.isConformant(triple.getSubject(), tc.getShapeExpr().getId());
-			return false;
+			TCProperty property = tc.getProperty();
+			if (!sameTerm(property.getIri(), triple.getPredicate()))
+				return false;
+			if (property.isForward())
+				return sameTerm(triple.getSubject(), focusNode) && shapeMap.isConformant(triple.getObject(), tc.getShapeExpr().getId());
+			return sameTerm(triple.getObject(), focusNode) && shapeMap.isConformant(triple.getSubject(), tc.getShapeExpr().getId());
 		}
 	}
 	
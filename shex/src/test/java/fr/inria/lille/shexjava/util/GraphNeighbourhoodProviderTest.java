@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.rdf.api.Graph;
+import org.apache.commons.rdf.api.IRI;
+import org.apache.commons.rdf.api.Triple;
+import org.junit.Test;
+
+import fr.inria.lille.shexjava.GlobalFactory;
+
+public class GraphNeighbourhoodProviderTest {
+	static IRI n = iri("n");
+	static IRI m = iri("m");
+	static IRI p = iri("p");
+	static IRI q = iri("q");
+	static IRI r = iri("r");
+	static IRI s = iri("s");
+
+	private static IRI iri(String name) {
+		return GlobalFactory.RDFFactory.createIRI("http://a.b/"+name);
+	}
+
+	private Graph createGraph() {
+		Graph graph = GlobalFactory.RDFFactory.createGraph();
+		graph.add(n, p, m);
+		graph.add(n, q, m);
+		graph.add(n, r, GlobalFactory.RDFFactory.createLiteral("r"));
+		graph.add(n, s, n);
+		graph.add(m, p, n);
+		graph.add(m, q, n);
+		graph.add(m, r, n);
+		return graph;
+	}
+
+	private void checkSameNeighbourhood(Graph graph, Set<IRI> forward, Set<IRI> inverse) {
+		Set<Triple> byPredicate = new HashSet<>(new GraphNeighbourhoodProvider(graph, 4).getNeighbourhood(n, forward, inverse));
+		List<Triple> byScan = new GraphNeighbourhoodProvider(graph, 1).getNeighbourhood(n, forward, inverse);
+		assertEquals(new HashSet<>(byScan), byPredicate);
+		for (Triple triple:byScan)
+			assertTrue((triple.getSubject().equals(n) && (forward == null || forward.contains(triple.getPredicate())))
+					|| (triple.getObject().equals(n) && inverse.contains(triple.getPredicate())));
+	}
+
+	@Test
+	public void testStrategiesGiveSameNeighbourhood() {
+		Graph graph = createGraph();
+		Set<IRI> none = new HashSet<>();
+		Set<IRI> pq = new HashSet<>(Arrays.asList(p, q));
+		Set<IRI> pqrs = new HashSet<>(Arrays.asList(p, q, r, s));
+		checkSameNeighbourhood(graph, pq, none);
+		checkSameNeighbourhood(graph, none, pq);
+		checkSameNeighbourhood(graph, pqrs, pqrs);
+		checkSameNeighbourhood(graph, null, pq);
+		checkSameNeighbourhood(graph, new HashSet<>(Arrays.asList(s)), new HashSet<>(Arrays.asList(s)));
+	}
+
+	@Test
+	public void testNeighbourhoodSize() {
+		Graph graph = createGraph();
+		Set<IRI> pqrs = new HashSet<>(Arrays.asList(p, q, r, s));
+		// the self loop is both forward and inverse
+		assertEquals(8, new GraphNeighbourhoodProvider(graph, 4).getNeighbourhood(n, pqrs, pqrs).size());
+		assertEquals(8, new GraphNeighbourhoodProvider(graph, 1).getNeighbourhood(n, pqrs, pqrs).size());
+		assertEquals(4, new GraphNeighbourhoodProvider(graph).getNeighbourhood(n, null, new HashSet<>()).size());
+		assertEquals(0, new GraphNeighbourhoodProvider(graph).getNeighbourhood(GlobalFactory.RDFFactory.createLiteral("r"), null, pqrs).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMaxPredicateQueries() {
+		new GraphNeighbourhoodProvider(createGraph(), 0);
+	}
+
+}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IndexedLongStackTest {
+
+	// the slot of a value in a table of the given capacity, as computed by IndexedLongStack
+	private static int slot(long value, int capacity) {
+		long hash = value * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & (capacity - 1);
+	}
+
+	// values whose slot in the initial table of 16 entries is the given one
+	private static List<Long> valuesInSlot(int slot, int count) {
+		List<Long> values = new ArrayList<>();
+		for (long value = 0; values.size() < count; value++)
+			if (slot(value, 16) == slot)
+				values.add(value);
+		return values;
+	}
+
+	private static void checkStack(IndexedLongStack stack, List<Long> expected) {
+		assertEquals(expected.size(), stack.size());
+		assertEquals(expected.isEmpty(), stack.isEmpty());
+		for (int i = 0; i < expected.size(); i++) {
+			assertTrue(stack.contains(expected.get(i)));
+			assertEquals(i, stack.depth(expected.get(i)));
+		}
+		if (!expected.isEmpty())
+			assertEquals((long) expected.get(expected.size() - 1), stack.peek());
+	}
+
+	@Test
+	public void testPushPopDepth() {
+		IndexedLongStack stack = new IndexedLongStack();
+		assertTrue(stack.isEmpty());
+		stack.push(5);
+		stack.push(-1);
+		stack.push(Long.MAX_VALUE);
+		assertEquals(0, stack.depth(5));
+		assertEquals(1, stack.depth(-1));
+		assertEquals(2, stack.depth(Long.MAX_VALUE));
+		assertEquals(-1, stack.depth(6));
+		assertEquals(Long.MAX_VALUE, stack.pop());
+		assertFalse(stack.contains(Long.MAX_VALUE));
+		assertEquals(-1, stack.peek());
+		assertEquals(-1, stack.pop());
+		assertEquals(5, stack.pop());
+		assertTrue(stack.isEmpty());
+		assertEquals(-1, stack.depth(5));
+	}
+
+	@Test
+	public void testWrapAroundCluster() {
+		// the values of the last slot overflow at the beginning of the table, followed by values of the first slot
+		List<Long> last = valuesInSlot(15, 3);
+		List<Long> first = valuesInSlot(0, 2);
+		List<Long> expected = new ArrayList<>();
+		IndexedLongStack stack = new IndexedLongStack();
+		for (long value:last) {
+			stack.push(value);
+			expected.add(value);
+		}
+		for (long value:first) {
+			stack.push(value);
+			expected.add(value);
+		}
+		checkStack(stack, expected);
+		while (!expected.isEmpty()) {
+			assertEquals((long) expected.remove(expected.size() - 1), stack.pop());
+			checkStack(stack, expected);
+		}
+		// the values of the first slot are pushed before the ones that wrap around
+		for (long value:first) {
+			stack.push(value);
+			expected.add(value);
+		}
+		for (long value:last) {
+			stack.push(value);
+			expected.add(value);
+		}
+		checkStack(stack, expected);
+		while (!expected.isEmpty()) {
+			assertEquals((long) expected.remove(expected.size() - 1), stack.pop());
+			checkStack(stack, expected);
+		}
+	}
+
+	@Test
+	public void testResize() {
+		IndexedLongStack stack = new IndexedLongStack();
+		List<Long> expected = new ArrayList<>();
+		// many values in the same slot, so that the clusters are long before and after the resizes
+		for (long value:valuesInSlot(15, 200)) {
+			stack.push(value);
+			expected.add(value);
+		}
+		checkStack(stack, expected);
+		for (int i = 0; i < 150; i++)
+			assertEquals((long) expected.remove(expected.size() - 1), stack.pop());
+		checkStack(stack, expected);
+		for (long value = -1; value > -100; value--) {
+			stack.push(value);
+			expected.add(value);
+		}
+		checkStack(stack, expected);
+	}
+
+	@Test
+	public void testClearAndReuse() {
+		IndexedLongStack stack = new IndexedLongStack();
+		for (long value = 0; value < 100; value++)
+			stack.push(value);
+		stack.clear();
+		checkStack(stack, new ArrayList<>());
+		for (long value = 0; value < 100; value++)
+			assertFalse(stack.contains(value));
+		List<Long> expected = new ArrayList<>();
+		for (long value = 99; value >= 50; value--) {
+			stack.push(value);
+			expected.add(value);
+		}
+		checkStack(stack, expected);
+		stack.clear();
+		stack.clear();
+		assertTrue(stack.isEmpty());
+		stack.push(7);
+		checkStack(stack, Collections.singletonList(7L));
+	}
+
+	@Test
+	public void testDuplicatePushIsRejected() {
+		IndexedLongStack stack = new IndexedLongStack();
+		stack.push(1);
+		stack.push(2);
+		try {
+			stack.push(1);
+			fail("a duplicate value was pushed");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		// the stack is unchanged
+		List<Long> expected = new ArrayList<>();
+		expected.add(1L);
+		expected.add(2L);
+		checkStack(stack, expected);
+		// a popped value can be pushed again
+		stack.pop();
+		stack.push(2);
+		checkStack(stack, expected);
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void testPopEmpty() {
+		IndexedLongStack stack = new IndexedLongStack();
+		stack.push(1);
+		stack.pop();
+		stack.pop();
+	}
+
+	@Test
+	public void testRandomOperations() {
+		Random random = new Random(42);
+		IndexedLongStack stack = new IndexedLongStack();
+		List<Long> expected = new ArrayList<>();
+		for (int i = 0; i < 20000; i++) {
+			int operation = random.nextInt(10);
+			if (operation < 6) {
+				long value = random.nextInt(500);
+				if (expected.contains(value)) {
+					assertEquals(expected.indexOf(value), stack.depth(value));
+				} else {
+					stack.push(value);
+					expected.add(value);
+				}
+			} else if (operation < 9) {
+				if (!expected.isEmpty())
+					assertEquals((long) expected.remove(expected.size() - 1), stack.pop());
+			} else if (random.nextInt(20) == 0) {
+				stack.clear();
+				expected.clear();
+			}
+			if (i % 100 == 0)
+				checkStack(stack, expected);
+		}
+		checkStack(stack, expected);
+	}
+
+}
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class LongDirectedGraphTest {
+
+	private static void assertVertices(long[] expected, long[] actual) {
+		long[] sorted = actual.clone();
+		Arrays.sort(sorted);
+		assertArrayEquals(expected, sorted);
+	}
+
+	@Test
+	public void testAddEdge() {
+		LongDirectedGraph graph = new LongDirectedGraph();
+		assertTrue(graph.isEmpty());
+		assertTrue(graph.addEdge(1, 2));
+		assertFalse(graph.addEdge(1, 2));
+		assertTrue(graph.addEdge(2, 1));
+		assertTrue(graph.addEdge(3, 3));
+		assertFalse(graph.addEdge(3, 3));
+		assertEquals(3, graph.getNbVertices());
+		assertVertices(new long[] {2}, graph.getTargets(1));
+		assertVertices(new long[] {2}, graph.getSources(1));
+		assertVertices(new long[] {3}, graph.getTargets(3));
+		assertVertices(new long[] {3}, graph.getSources(3));
+		assertVertices(new long[0], graph.getTargets(4));
+		assertFalse(graph.containsVertex(4));
+	}
+
+	@Test
+	public void testRemoveVertexWithSelfLoop() {
+		LongDirectedGraph graph = new LongDirectedGraph();
+		graph.addEdge(1, 1);
+		graph.addEdge(1, 2);
+		graph.addEdge(2, 1);
+		graph.addEdge(2, 2);
+		graph.removeVertex(1);
+		assertFalse(graph.containsVertex(1));
+		assertEquals(1, graph.getNbVertices());
+		assertVertices(new long[0], graph.getSources(1));
+		assertVertices(new long[0], graph.getTargets(1));
+		assertVertices(new long[] {2}, graph.getSources(2));
+		assertVertices(new long[] {2}, graph.getTargets(2));
+		graph.removeVertex(2);
+		assertTrue(graph.isEmpty());
+		// removing an absent vertex does nothing
+		graph.removeVertex(2);
+		assertTrue(graph.isEmpty());
+	}
+
+	@Test
+	public void testRemoveVertexWithInAndOutEdges() {
+		LongDirectedGraph graph = new LongDirectedGraph();
+		// 0 -> 5 -> 1, 2 -> 5 -> 3, 5 <-> 4, and edges that do not involve 5
+		graph.addEdge(0, 5);
+		graph.addEdge(2, 5);
+		graph.addEdge(5, 1);
+		graph.addEdge(5, 3);
+		graph.addEdge(5, 4);
+		graph.addEdge(4, 5);
+		graph.addEdge(0, 1);
+		graph.addEdge(4, 3);
+		graph.removeVertex(5);
+		assertFalse(graph.containsVertex(5));
+		assertEquals(5, graph.getNbVertices());
+		assertVertices(new long[] {1}, graph.getTargets(0));
+		assertVertices(new long[0], graph.getTargets(2));
+		assertVertices(new long[] {0}, graph.getSources(1));
+		assertVertices(new long[] {4}, graph.getSources(3));
+		assertVertices(new long[] {3}, graph.getTargets(4));
+		assertVertices(new long[0], graph.getSources(4));
+		// the edges can be added again
+		assertTrue(graph.addEdge(0, 5));
+		assertTrue(graph.addEdge(5, 4));
+		assertVertices(new long[] {1, 5}, graph.getTargets(0));
+		assertVertices(new long[] {5}, graph.getSources(4));
+	}
+
+	@Test
+	public void testClearAndReuse() {
+		LongDirectedGraph graph = new LongDirectedGraph();
+		for (long i = 0; i < 100; i++) {
+			graph.addEdge(i, (i + 1) % 100);
+			graph.addEdge(i, i);
+		}
+		graph.clear();
+		assertTrue(graph.isEmpty());
+		assertFalse(graph.containsVertex(0));
+		assertVertices(new long[0], graph.getTargets(0));
+		assertTrue(graph.addEdge(0, 1));
+		assertTrue(graph.addEdge(1, 1));
+		assertTrue(graph.addEdge(2, 1));
+		assertVertices(new long[] {1}, graph.getTargets(0));
+		assertVertices(new long[] {0, 1, 2}, graph.getSources(1));
+		graph.removeVertex(1);
+		assertEquals(2, graph.getNbVertices());
+		assertVertices(new long[0], graph.getTargets(0));
+		assertVertices(new long[0], graph.getTargets(2));
+	}
+
+	@Test
+	public void testManyEdges() {
+		LongDirectedGraph graph = new LongDirectedGraph();
+		for (long i = 1; i <= 50; i++) {
+			assertTrue(graph.addEdge(0, i));
+			assertTrue(graph.addEdge(i, 0));
+		}
+		for (long i = 1; i <= 50; i++)
+			assertFalse(graph.addEdge(i, 0));
+		for (long i = 2; i <= 50; i += 2)
+			graph.removeVertex(i);
+		assertEquals(26, graph.getNbVertices());
+		long[] odd = new long[25];
+		for (int i = 0; i < 25; i++)
+			odd[i] = 2 * i + 1;
+		assertVertices(odd, graph.getTargets(0));
+		assertVertices(odd, graph.getSources(0));
+	}
+
+}
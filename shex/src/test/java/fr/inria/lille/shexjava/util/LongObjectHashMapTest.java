@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongObjectHashMapTest {
+
+	@Test
+	public void testPutGetRemove() {
+		LongObjectHashMap<String> map = new LongObjectHashMap<>();
+		assertTrue(map.isEmpty());
+		assertNull(map.put(3, "a"));
+		assertEquals("a", map.put(3, "b"));
+		assertEquals("b", map.get(3));
+		assertEquals(1, map.size());
+		assertNull(map.get(4));
+		assertEquals("c", map.getOrDefault(4, "c"));
+		assertEquals("b", map.remove(3));
+		assertNull(map.remove(3));
+		assertFalse(map.containsKey(3));
+		assertTrue(map.isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullValueRejected() {
+		new LongObjectHashMap<String>().put(1, null);
+	}
+
+	// 12 keys in the 16 slots of the initial table, so that the keys are in clusters
+	@Test
+	public void testRemoveInClusters() {
+		long[] keys = new long[12];
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = TermDictionary.pack(i, i % 3);
+		for (long removed:keys) {
+			LongObjectHashMap<Long> map = new LongObjectHashMap<>();
+			for (long key:keys)
+				map.put(key, key);
+			map.remove(removed);
+			assertEquals(keys.length - 1, map.size());
+			for (long key:keys)
+				if (key == removed)
+					assertFalse(map.containsKey(key));
+				else
+					assertEquals(Long.valueOf(key), map.get(key));
+		}
+	}
+
+	@Test
+	public void testResize() {
+		LongObjectHashMap<Long> map = new LongObjectHashMap<>();
+		for (long key = -5000; key < 5000; key++)
+			map.put(key * 31, key);
+		assertEquals(10000, map.size());
+		for (long key = -5000; key < 5000; key++)
+			assertEquals(Long.valueOf(key), map.get(key * 31));
+		assertFalse(map.containsKey(1));
+		long[] keys = map.keys();
+		Arrays.sort(keys);
+		assertEquals(-5000 * 31, keys[0]);
+		assertEquals(4999 * 31, keys[keys.length - 1]);
+	}
+
+	@Test
+	public void testClearAndReuse() {
+		LongObjectHashMap<String> map = new LongObjectHashMap<>(100);
+		for (long key = 0; key < 100; key++)
+			map.put(key, "v" + key);
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertFalse(map.containsKey(5));
+		map.put(5, "w");
+		assertEquals("w", map.get(5));
+		assertEquals(1, map.keys().length);
+	}
+
+	@Test
+	public void testSameContentAsHashMap() {
+		Random random = new Random(42);
+		LongObjectHashMap<Integer> map = new LongObjectHashMap<>();
+		Map<Long,Integer> expected = new HashMap<>();
+		for (int i = 0; i < 200000; i++) {
+			// few distinct keys, so that the operations often hit existing keys
+			long key = TermDictionary.pack(random.nextInt(300), random.nextInt(4));
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(key), map.remove(key));
+			} else {
+				assertEquals(expected.put(key, i), map.put(key, i));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for (Map.Entry<Long,Integer> entry:expected.entrySet())
+			assertEquals(entry.getValue(), map.get(entry.getKey()));
+		Map<Long,Integer> visited = new HashMap<>();
+		map.forEach((key, value) -> visited.put(key, value));
+		assertEquals(expected, visited);
+	}
+}
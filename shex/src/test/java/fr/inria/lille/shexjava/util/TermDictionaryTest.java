@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.apache.commons.rdf.api.IRI;
+import org.apache.commons.rdf.api.RDFTerm;
+import org.junit.Test;
+
+import fr.inria.lille.shexjava.GlobalFactory;
+import fr.inria.lille.shexjava.schema.Label;
+
+public class TermDictionaryTest {
+	static IRI n1 = GlobalFactory.RDFFactory.createIRI("http://a.b/n1");
+	static IRI n2 = GlobalFactory.RDFFactory.createIRI("http://a.b/n2");
+	static Label person = new Label(GlobalFactory.RDFFactory.createIRI("http://inria.fr/Person"));
+	static Label team = new Label(GlobalFactory.RDFFactory.createIRI("http://inria.fr/Team"));
+
+	@Test
+	public void testIds() {
+		TermDictionary dictionary = new TermDictionary();
+		assertEquals(TermDictionary.UNKNOWN, dictionary.findId(n1));
+		assertEquals(0, dictionary.getId(n1));
+		assertEquals(1, dictionary.getId(n2));
+		assertEquals(0, dictionary.getId(n1));
+		assertEquals(0, dictionary.getId(person));
+		assertEquals(1, dictionary.findId(n2));
+		assertEquals(TermDictionary.UNKNOWN, dictionary.findId(team));
+		assertEquals(2, dictionary.getNbTerms());
+		assertEquals(1, dictionary.getNbLabels());
+		assertEquals(n2, dictionary.getTerm(1));
+		assertEquals(person, dictionary.getLabel(0));
+	}
+
+	@Test
+	public void testPack() {
+		int[] ids = { 0, 1, 2, 1000, Integer.MAX_VALUE };
+		for (int nodeId:ids)
+			for (int labelId:ids) {
+				long key = TermDictionary.pack(nodeId, labelId);
+				assertEquals(nodeId, TermDictionary.nodeId(key));
+				assertEquals(labelId, TermDictionary.labelId(key));
+				assertNotEquals(Long.MIN_VALUE, key);
+			}
+		assertNotEquals(TermDictionary.pack(1, 2), TermDictionary.pack(2, 1));
+	}
+
+	@Test
+	public void testKeyRoundTrip() {
+		TermDictionary dictionary = new TermDictionary();
+		assertEquals(Long.MIN_VALUE, dictionary.findKey(n1, person));
+		// enough terms to grow the arrays of the dictionary
+		for (int i = 0; i < 500; i++) {
+			RDFTerm node = GlobalFactory.RDFFactory.createIRI("http://a.b/node" + i);
+			Label label = i % 2 == 0 ? person : team;
+			long key = dictionary.getKey(node, label);
+			assertEquals(key, dictionary.findKey(node, label));
+			assertEquals(node, dictionary.getTermOfKey(key));
+			assertEquals(label, dictionary.getLabelOfKey(key));
+			assertEquals(new Pair<>(node, label), dictionary.unpack(key));
+		}
+		assertEquals(Long.MIN_VALUE, dictionary.findKey(n1, person));
+		assertEquals(500, dictionary.getNbTerms());
+		assertEquals(2, dictionary.getNbLabels());
+	}
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Compares the evaluation of pattern facets with Saxon and with java.util.regex.
+ *
+ * Run with the main method from the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XPathRegexBenchmark {
+
+	@Param({ "^[a-z]+$", "^[0-9]{3}-[0-9]{4}$", "^http://[^/]+/.*$", "^[A-Z][a-z]+$" })
+	public String regex;
+
+	private String[] inputs = { "abcdefgh", "555-1234", "http://example.org/a/b", "Hello", "no match at all 12" };
+	private XPath.CompiledRegex saxon;
+	private XPath.CompiledRegex java;
+
+	@Setup
+	public void setup() {
+		saxon = XPath.compileWithSaxon(regex, "");
+		XPath.setJavaRegexEnabled(true);
+		java = XPath.compile(regex, "");
+		if (!java.isJavaPattern())
+			throw new IllegalStateException("Pattern not translated: "+regex);
+	}
+
+	@Benchmark
+	public int saxon() {
+		int count = 0;
+		for (String input:inputs)
+			if (saxon.matches(input))
+				count++;
+		return count;
+	}
+
+	@Benchmark
+	public int javaRegex() {
+		int count = 0;
+		for (String input:inputs)
+			if (java.matches(input))
+				count++;
+		return count;
+	}
+
+	@Benchmark
+	public int saxonWithoutCache() {
+		int count = 0;
+		for (String input:inputs)
+			if (XPath.compileWithSaxon(regex, "").matches(input))
+				count++;
+		return count;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder().include(XPathRegexBenchmark.class.getSimpleName()).build();
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/** Checks that the expressions translated to java.util.regex have the same matches as with Saxon. */
+public class XPathRegexTest {
+
+	static String[] inputs = { "", "a", "abc", "ABC", "aBc", "a.c", "a-b", "a&b", "a^b", "x$", "[a]", "a\nb", "abc\n", "a\r\nc",
+			"123", "12a", "١٢٣", " \t", "\u000B", "\f", "été", "É", "😀", "k", "K",
+			"abab", "cdab", "aaa", "a{2}", "555-1234", "http://a.b/c" };
+
+	// pattern, flags
+	static String[][] translated = {
+			{ "abc", "" }, { "^abc$", "" }, { "a.c", "" }, { ".", "" }, { "^.*$", "" }, { "^.+$", "" }, { "x$", "" },
+			{ "[0-9]+", "" }, { "^[0-9]{3}-[0-9]{4}$", "" }, { "\\s", "" }, { "\\S+", "" }, { "^\\S*$", "" },
+			{ "[a-z]+", "" }, { "^[a-z]+$", "" }, { "[^a-z]", "" }, { "[0-9\\s]", "" }, { "[^\\s]", "" }, { "[a\\-z]", "" },
+			{ "[-a]", "" }, { "[a-]", "" }, { "[a&b]", "" }, { "[a^]", "" }, { "[.$]", "" }, { "[\\n\\r]", "" }, { "[\\[\\]]", "" },
+			{ "(ab|cd)*", "" }, { "^(ab|cd)+$", "" }, { "(?:ab)+?", "" }, { "a{2,}", "" }, { "^a{1,2}$", "" }, { "a{2}", "" }, { "a??b", "" },
+			{ "\\.", "" }, { "\\$", "" }, { "\\^", "" }, { "\\{", "" },
+			{ "\\n", "" }, { "é", "" }, { "😀", "" }, { "^.$", "" }, { "a&&b", "" }, { "a|", "" }, { "", "" },
+			{ "^http://", "" }, { "[à-ÿ]", "" },
+			{ "abc", "i" }, { "^[a-z]+$", "i" }, { "k", "i" }, { "[0-9]", "i" },
+			{ ".", "s" }, { "a.c", "s" }, { "^.*$", "s" },
+			{ "a.c", "q" }, { "A.C", "qi" }, { "[a]", "q" },
+			{ "a.c", "si" } };
+
+	static String[][] rejected = {
+			{ "\\w", "" }, { "\\W", "" }, { "\\i", "" }, { "\\c", "" }, { "(a)\\1", "" }, { "[a-z-[aeiou]]", "" }, { "[a[b]]", "" },
+			{ "a", "m" }, { "a b", "x" }, { "é", "i" }, { "[^a]", "i" }, { "\\p{Lu}", "i" }, { "\\p{IsBasicLatin}", "" },
+			{ "\\p{Cn}", "" }, { "\\p{Lu}", "" }, { "\\P{L}", "" }, { "^[\\p{L}\\p{Nd}]+$", "" }, { "\\d", "" }, { "\\D", "" }, { "[\\d\\s]", "" },
+			{ "a**", "" }, { "(?=a)", "" }, { "\\b", "" }, { "a]", "" }, { "a}", "" }, { "[a-\\d]", "" },
+			{ "[\\S]", "" }, { "a\u0000b", "" }, { "[]", "" }, { "[a-c-e]", "" }, { "*a", "" }, { "a", "z" } };
+
+
+	@Test
+	public void testTranslatedHaveSameMatches() {
+		for (String[] regex:translated) {
+			Pattern pattern = XPath.toJavaPattern(regex[0], regex[1]);
+			assertNotNull("Not translated: "+regex[0]+" flags "+regex[1], pattern);
+			XPath.CompiledRegex saxon = XPath.compileWithSaxon(regex[0], regex[1]);
+			for (String input:inputs)
+				assertEquals("Pattern "+regex[0]+" flags "+regex[1]+" on "+input,
+							 saxon.matches(input), pattern.matcher(input).find());
+		}
+	}
+
+	@Test
+	public void testRejected() {
+		for (String[] regex:rejected)
+			assertNull("Translated: "+regex[0]+" flags "+regex[1], XPath.toJavaPattern(regex[0], regex[1]));
+	}
+
+	@Test
+	public void testCompileUsesJavaWhenPossible() {
+		assertTrue(XPath.compile("^[a-z]+$", null).isJavaPattern());
+		assertTrue(!XPath.compile("\\w+", null).isJavaPattern());
+		assertEquals(XPath.compileWithSaxon("\\w+", null).matches("abc"), XPath.matches("abc", "\\w+", null));
+	}
+
+	@Test
+	public void testDisableJavaRegex() {
+		try {
+			XPath.setJavaRegexEnabled(false);
+			XPath.CompiledRegex regex = XPath.compile("^[a-z]+$", null);
+			assertTrue(!regex.isJavaPattern());
+			assertTrue(!regex.isJavaRegexEnabled());
+			assertTrue(regex.matches("abc"));
+		} finally {
+			XPath.setJavaRegexEnabled(true);
+		}
+		assertTrue(XPath.compile("^[a-z]+$", null).isJavaRegexEnabled());
+	}
+
+	@Test
+	public void testInvalidRegexIsRejected() {
+		for (String[] regex:new String[][] { { "*a", "" }, { "[]", "" }, { "a", "z" } }) {
+			// the invalid expression is not cached, it is rejected at every compilation
+			for (int i = 0; i < 2; i++) {
+				try {
+					XPath.compile(regex[0], regex[1]);
+					fail("Compiled: "+regex[0]+" flags "+regex[1]);
+				} catch (IllegalArgumentException e) {
+					// expected
+				}
+			}
+		}
+	}
+}
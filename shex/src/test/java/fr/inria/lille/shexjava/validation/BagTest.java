@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import fr.inria.lille.shexjava.GlobalFactory;
+import fr.inria.lille.shexjava.schema.Label;
+import fr.inria.lille.shexjava.schema.ShexSchema;
+import fr.inria.lille.shexjava.schema.abstrsynt.EmptyShape;
+import fr.inria.lille.shexjava.schema.abstrsynt.Shape;
+import fr.inria.lille.shexjava.schema.abstrsynt.TCProperty;
+import fr.inria.lille.shexjava.schema.abstrsynt.TripleConstraint;
+import fr.inria.lille.shexjava.schema.abstrsynt.TripleExpr;
+import fr.inria.lille.shexjava.schema.parsing.ShExCParser;
+
+public class BagTest {
+	protected ShExCParser shexParser = new ShExCParser();
+
+	static Label shapeLabel = new Label(GlobalFactory.RDFFactory.createIRI("http://inria.fr/S"));
+
+	private static TripleConstraint createTripleConstraint(String name) {
+		return new TripleConstraint(TCProperty.createFwProperty(GlobalFactory.RDFFactory.createIRI("http://a.b/"+name)), new EmptyShape());
+	}
+
+	@Test
+	public void testGrowableAlphabet() {
+		List<TripleConstraint> tcs = Arrays.asList(createTripleConstraint("p"), createTripleConstraint("q"), 
+												   createTripleConstraint("r"), createTripleConstraint("s"), createTripleConstraint("t"));
+		Bag bag = new Bag();
+		assertTrue(bag.alphabet().isEmpty());
+		for (int i = 0; i < tcs.size(); i++)
+			for (int j = 0; j <= i; j++)
+				bag.increment(tcs.get(i));
+		for (int i = 0; i < tcs.size(); i++)
+			assertEquals(i+1, bag.getMult(tcs.get(i)));
+		assertEquals(0, bag.getMult(createTripleConstraint("p")));
+		assertEquals(5, bag.alphabet().size());
+		assertEquals(Integer.valueOf(3), bag.getMap().get(tcs.get(2)));
+		bag.clear();
+		assertTrue(bag.alphabet().isEmpty());
+		bag.increment(tcs.get(4));
+		assertEquals(1, bag.getMult(tcs.get(4)));
+		assertEquals(1, bag.alphabet().size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFixedAlphabet() {
+		Bag bag = new Bag(Arrays.asList(createTripleConstraint("p")));
+		bag.increment(createTripleConstraint("q"));
+	}
+
+	@Test
+	public void testIntervalBySlot() throws Exception {
+		checkIntervalBySlot("<http://inria.fr/S> { <http://a.b/p> IRI {2,3} ; <http://a.b/p> . * ; <http://a.b/q> LITERAL ? }");
+		checkIntervalBySlot("<http://inria.fr/S> { ( <http://a.b/p> IRI + | <http://a.b/q> LITERAL + ) ; <http://a.b/p> . ? }");
+		checkIntervalBySlot("<http://inria.fr/S> { ( <http://a.b/p> IRI ; <http://a.b/q> LITERAL ? ) * ; <http://a.b/r> . {0} }");
+	}
+
+	// the interval read by slot in the compiled schema is the one read by triple constraint, for all the bags with multiplicities at most 2
+	private void checkIntervalBySlot(String schemaSt) throws Exception {
+		ShexSchema schema = new ShexSchema(shexParser.getRules(new ByteArrayInputStream(schemaSt.getBytes())));
+		CompiledSchema compiledSchema = new CompiledSchema(schema);
+		Shape shape = (Shape) schema.getShapeExprsMap().get(shapeLabel);
+		TripleExpr sorbe = compiledSchema.getSORBETripleExpr(shape);
+		MatchingSearch search = compiledSchema.getMatchingSearch(shape);
+		List<TripleConstraint> tcs = compiledSchema.getTripleConstraints(sorbe);
+		TripleConstraint[] bySlot = new TripleConstraint[tcs.size()];
+		for (TripleConstraint tc:tcs)
+			bySlot[search.slotOf(tc)] = tc;
+
+		IntervalComputation compiled = new IntervalComputation(compiledSchema);
+		IntervalComputation dynamic = new IntervalComputation(new DynamicCollectorOfTripleConstraints());
+		int[] mults = new int[tcs.size()];
+		do {
+			Bag slotBag = new Bag(Arrays.asList(bySlot));
+			Bag bag = new Bag();
+			for (int i = 0; i < mults.length; i++) {
+				for (int k = 0; k < mults[i]; k++) {
+					slotBag.increment(i);
+					bag.increment(bySlot[i]);
+				}
+			}
+			sorbe.accept(compiled, slotBag);
+			sorbe.accept(dynamic, bag);
+			assertEquals(bag.toString(), dynamic.getResult(), compiled.getResult());
+		} while (next(mults, 2));
+	}
+
+	private static boolean next(int[] mults, int max) {
+		for (int i = 0; i < mults.length; i++) {
+			if (mults[i] < max) {
+				mults[i]++;
+				return true;
+			}
+			mults[i] = 0;
+		}
+		return false;
+	}
+}
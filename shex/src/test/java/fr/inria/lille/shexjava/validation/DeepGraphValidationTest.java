@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.validation;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+
+import org.apache.commons.rdf.api.Graph;
+import org.apache.commons.rdf.api.IRI;
+import org.junit.Test;
+
+import fr.inria.lille.shexjava.GlobalFactory;
+import fr.inria.lille.shexjava.schema.Label;
+import fr.inria.lille.shexjava.schema.ShexSchema;
+import fr.inria.lille.shexjava.schema.parsing.ShExCParser;
+
+/** The validation of long chains must not be bounded by the stack of the thread. */
+public class DeepGraphValidationTest {
+	static final int LENGTH = 20000;
+	static IRI next = GlobalFactory.RDFFactory.createIRI("http://a.b/next");
+	static IRI value = GlobalFactory.RDFFactory.createIRI("http://a.b/value");
+	static Label list = new Label(GlobalFactory.RDFFactory.createIRI("http://inria.fr/List"));
+
+	static String schemaSt = "<http://inria.fr/List> { <http://a.b/value> . ; <http://a.b/next> @<http://inria.fr/List> ? }";
+
+	private static IRI node(int i) {
+		return GlobalFactory.RDFFactory.createIRI("http://a.b/n"+i);
+	}
+
+	private static Graph createChain(boolean valid) {
+		Graph graph = GlobalFactory.RDFFactory.createGraph();
+		for (int i = 0; i < LENGTH; i++) {
+			if (valid || i != LENGTH-1)
+				graph.add(node(i), value, GlobalFactory.RDFFactory.createLiteral("v"+i));
+			if (i < LENGTH-1)
+				graph.add(node(i), next, node(i+1));
+		}
+		return graph;
+	}
+
+	private static ShexSchema createSchema() throws Exception {
+		return new ShexSchema(new ShExCParser().getRules(new ByteArrayInputStream(schemaSt.getBytes())));
+	}
+
+	@Test
+	public void testRecursiveValidation() throws Exception {
+		ShexSchema schema = createSchema();
+		assertTrue(new RecursiveValidation(schema, createChain(true)).validate(node(0), list));
+		assertFalse(new RecursiveValidation(schema, createChain(false)).validate(node(0), list));
+	}
+
+	@Test
+	public void testRecursiveValidationWithMemorization() throws Exception {
+		ShexSchema schema = createSchema();
+		assertTrue(new RecursiveValidationWithMemorization(schema, createChain(true)).validate(node(0), list));
+		assertFalse(new RecursiveValidationWithMemorization(schema, createChain(false)).validate(node(0), list));
+	}
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.commons.rdf.api.IRI;
+import org.apache.commons.rdf.api.Triple;
+import org.junit.Test;
+
+import fr.inria.lille.shexjava.schema.Label;
+import fr.inria.lille.shexjava.schema.ShexSchema;
+import fr.inria.lille.shexjava.schema.abstrsynt.Shape;
+import fr.inria.lille.shexjava.schema.abstrsynt.TripleConstraint;
+import fr.inria.lille.shexjava.schema.parsing.ShExCParser;
+
+/** Compares the matchings found by {@link FlowMatchingSearch} with the ones found by {@link MatchingSearch}. */
+public class FlowMatchingSearchTest {
+	protected ShExCParser shexParser = new ShExCParser();
+
+	static IRI hub = MatchingSearchTest.hub;
+	static Label shapeLabel = MatchingSearchTest.shape;
+
+	@Test
+	public void testLowerAndUpperBoundsOnSamePredicate() throws Exception {
+		String schemaSt = "<http://inria.fr/S> { <http://a.b/p> . {2,3} ; <http://a.b/p> . {1,2} }";
+		// from 3 to 5 triples with the predicate p
+		assertEquals(3, compare(schemaSt, 7, 0));
+	}
+
+	@Test
+	public void testExactAndUnboundedCardinalities() throws Exception {
+		String schemaSt = "<http://inria.fr/S> { <http://a.b/p> . {2} ; <http://a.b/p> . * ; <http://a.b/q> . {1,2} }";
+		// at least 2 triples with the predicate p, 1 or 2 with the predicate q
+		assertEquals(6 * 2, compare(schemaSt, 7, 3));
+	}
+
+	@Test
+	public void testOptionalConstraints() throws Exception {
+		String schemaSt = "<http://inria.fr/S> { <http://a.b/p> . + ; <http://a.b/q> . ? ; <http://a.b/p> . {0,1} }";
+		// at least 1 triple with the predicate p, at most 1 with the predicate q
+		assertEquals(7 * 2, compare(schemaSt, 7, 3));
+	}
+
+	// Searches a matching for all the hubs with at most maxP and maxQ triples, and returns the number of hubs that have a matching
+	private int compare(String schemaSt, int maxP, int maxQ) throws Exception {
+		ShexSchema schema = new ShexSchema(shexParser.getRules(new ByteArrayInputStream(schemaSt.getBytes())));
+		CompiledSchema compiledSchema = new CompiledSchema(schema);
+		Shape shape = (Shape) schema.getShapeExprsMap().get(shapeLabel);
+		FlowMatchingSearch flowSearch = compiledSchema.getFlowMatchingSearch(shape);
+		assertNotNull(flowSearch);
+		MatchingSearch search = compiledSchema.getMatchingSearch(shape);
+		PredicateIndex index = compiledSchema.getPredicateIndex(shape);
+
+		int nbFeasible = 0;
+		for (int nbP = 0; nbP <= maxP; nbP++) {
+			for (int nbQ = 0; nbQ <= maxQ; nbQ++) {
+				Map<Triple, List<TripleConstraint>> candidates = new LinkedHashMap<>();
+				for (Triple triple:MatchingSearchTest.createHub(nbP, nbQ).stream(hub, null, null).collect(Collectors.toList()))
+					candidates.put(triple, index.getCandidates(hub, triple));
+				PreMatching preMatching = new PreMatching(candidates, new ArrayList<>(), new ArrayList<>());
+
+				Map<Triple, TripleConstraint> expected = search.findMatching(preMatching, new IntervalComputation(compiledSchema), null);
+				Map<Triple, TripleConstraint> found = flowSearch.findMatching(preMatching);
+				assertEquals("p: "+nbP+" q: "+nbQ, expected != null, found != null);
+				if (found == null)
+					continue;
+				nbFeasible++;
+				// the matching found by the flow is a matching of the expression
+				assertEquals(candidates.size(), found.size());
+				Map<Triple, List<TripleConstraint>> assignment = new LinkedHashMap<>();
+				for (Map.Entry<Triple, TripleConstraint> e:found.entrySet()) {
+					assertTrue(candidates.get(e.getKey()).contains(e.getValue()));
+					assignment.put(e.getKey(), Collections.singletonList(e.getValue()));
+				}
+				PreMatching matching = new PreMatching(assignment, new ArrayList<>(), new ArrayList<>());
+				assertTrue(search.isMatching(matching, new IntervalComputation(compiledSchema)));
+			}
+		}
+		return nbFeasible;
+	}
+}
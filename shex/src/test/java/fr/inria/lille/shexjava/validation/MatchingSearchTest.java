@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.validation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+
+import org.apache.commons.rdf.api.Graph;
+import org.apache.commons.rdf.api.IRI;
+import org.junit.Test;
+
+import fr.inria.lille.shexjava.GlobalFactory;
+import fr.inria.lille.shexjava.schema.Label;
+import fr.inria.lille.shexjava.schema.ShexSchema;
+import fr.inria.lille.shexjava.schema.parsing.ShExCParser;
+
+public class MatchingSearchTest {
+	protected ShExCParser shexParser = new ShExCParser();
+
+	static IRI hub = GlobalFactory.RDFFactory.createIRI("http://a.b/hub");
+	static IRI p = GlobalFactory.RDFFactory.createIRI("http://a.b/p");
+	static IRI q = GlobalFactory.RDFFactory.createIRI("http://a.b/q");
+	static Label shape = new Label(GlobalFactory.RDFFactory.createIRI("http://inria.fr/S"));
+
+	/** A graph in which the hub has nbP triples with the predicate p and IRI objects, and nbQ triples with the predicate q and literal objects. */
+	static Graph createHub(int nbP, int nbQ) {
+		Graph graph = GlobalFactory.RDFFactory.createGraph();
+		for (int i = 0; i < nbP; i++)
+			graph.add(hub, p, GlobalFactory.RDFFactory.createIRI("http://a.b/v"+i));
+		for (int i = 0; i < nbQ; i++)
+			graph.add(hub, q, GlobalFactory.RDFFactory.createLiteral("v"+i));
+		return graph;
+	}
+
+	private boolean validate(String schemaSt, Graph graph) throws Exception {
+		ShexSchema schema = new ShexSchema(shexParser.getRules(new ByteArrayInputStream(schemaSt.getBytes())));
+		RecursiveValidation validation = new RecursiveValidation(schema, graph);
+		return validation.validate(hub, shape);
+	}
+
+	@Test(timeout = 10000)
+	public void testHubWithoutMatching() throws Exception {
+		// every triple matches the 3 clones of the repeated constraint, the enumeration of all the bags is not possible
+		assertEquals(false, validate("<http://inria.fr/S> { <http://a.b/p> IRI {2,3} }", createHub(20, 0)));
+	}
+
+	@Test(timeout = 10000)
+	public void testHubWithMatching() throws Exception {
+		String schemaSt = "<http://inria.fr/S> { <http://a.b/p> IRI {2,3} ; <http://a.b/p> . * ; <http://a.b/q> LITERAL ? }";
+		assertEquals(true, validate(schemaSt, createHub(20, 1)));
+		assertEquals(false, validate(schemaSt, createHub(20, 2)));
+		assertEquals(false, validate(schemaSt, createHub(1, 0)));
+	}
+
+	@Test(timeout = 10000)
+	public void testOneOf() throws Exception {
+		String schemaSt = "<http://inria.fr/S> { ( <http://a.b/p> IRI + | <http://a.b/q> LITERAL + ) ; <http://a.b/p> . ? }";
+		assertEquals(true, validate(schemaSt, createHub(20, 0)));
+		assertEquals(true, validate(schemaSt, createHub(1, 20)));
+		assertEquals(false, validate(schemaSt, createHub(2, 20)));
+	}
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.rdf.api.Graph;
+import org.apache.commons.rdf.api.IRI;
+import org.apache.commons.rdf.api.RDFTerm;
+import org.apache.commons.rdf.api.Triple;
+import org.junit.Test;
+
+import fr.inria.lille.shexjava.GlobalFactory;
+import fr.inria.lille.shexjava.schema.Label;
+import fr.inria.lille.shexjava.schema.ShexSchema;
+import fr.inria.lille.shexjava.schema.abstrsynt.Shape;
+import fr.inria.lille.shexjava.schema.parsing.ShExCParser;
+import fr.inria.lille.shexjava.util.GraphNeighbourhoodProvider;
+import fr.inria.lille.shexjava.util.NeighbourhoodProvider;
+
+public class NeighbourhoodCacheTest {
+	static IRI first = GlobalFactory.RDFFactory.createIRI("http://a.b/first");
+	static IRI knows = GlobalFactory.RDFFactory.createIRI("http://a.b/knows");
+	static Label person = new Label(GlobalFactory.RDFFactory.createIRI("http://inria.fr/Person"));
+
+	static String schemaSt = "<http://inria.fr/Person> { <http://a.b/first> IRI; <http://a.b/knows> @<http://inria.fr/Person>* }";
+
+	private static IRI node(int i) {
+		return GlobalFactory.RDFFactory.createIRI("http://a.b/n"+i);
+	}
+
+	// a chain n0 knows n1 ... knows n(size-1)
+	private Graph createChain(int size) {
+		Graph graph = GlobalFactory.RDFFactory.createGraph();
+		for (int i = 0; i < size; i++) {
+			graph.add(node(i), first, GlobalFactory.RDFFactory.createIRI("http://a.b/name"+i));
+			if (i+1 < size)
+				graph.add(node(i), knows, node(i+1));
+		}
+		return graph;
+	}
+
+	private RecursiveValidationWithMemorization createValidator(Graph graph, CountingProvider provider) throws Exception {
+		ShexSchema schema = new ShexSchema(new ShExCParser().getRules(new ByteArrayInputStream(schemaSt.getBytes())));
+		RecursiveValidationWithMemorization algo = new RecursiveValidationWithMemorization(schema, graph);
+		algo.setNeighbourhoodProvider(provider);
+		return algo;
+	}
+
+	@Test
+	public void testGraphQueriedOncePerPair() throws Exception {
+		Graph graph = createChain(5);
+		CountingProvider provider = new CountingProvider(graph);
+		RecursiveValidationWithMemorization algo = createValidator(graph, provider);
+		assertTrue(algo.validate(node(0), person));
+		assertEquals(5, provider.calls.size());
+		for (int i = 0; i < 5; i++)
+			assertEquals(Integer.valueOf(1), provider.calls.get(node(i)));
+	}
+
+	@Test
+	public void testWithoutCache() throws Exception {
+		Graph graph = createChain(5);
+		CountingProvider provider = new CountingProvider(graph);
+		RecursiveValidationWithMemorization algo = createValidator(graph, provider);
+		algo.setNeighbourhoodCacheSize(0);
+		assertTrue(algo.validate(node(0), person));
+		assertTrue(provider.calls.get(node(0)) > 1);
+	}
+
+	@Test
+	public void testCacheClearedBetweenValidations() throws Exception {
+		Graph graph = createChain(2);
+		CountingProvider provider = new CountingProvider(graph);
+		RecursiveValidationWithMemorization algo = createValidator(graph, provider);
+		Shape shape = (Shape) algo.getCompiledSchema().getSchema().getShapeExprsMap().get(person);
+		assertEquals(2, algo.getNeighbourhood(node(0), shape).size());
+		assertEquals(2, algo.getNeighbourhood(node(0), shape).size());
+		assertEquals(Integer.valueOf(1), provider.calls.get(node(0)));
+
+		// the graph is modified between two validations without reset, n0 is not used by the validation of n1
+		graph.add(node(0), knows, node(2));
+		assertTrue(algo.validate(node(1), person));
+		assertEquals(3, algo.getNeighbourhood(node(0), shape).size());
+		assertEquals(Integer.valueOf(2), provider.calls.get(node(0)));
+	}
+
+
+	/** Counts the requests by node. */
+	static class CountingProvider implements NeighbourhoodProvider {
+		private final NeighbourhoodProvider provider;
+		final Map<RDFTerm,Integer> calls = new HashMap<>();
+
+		CountingProvider(Graph graph) {
+			this.provider = new GraphNeighbourhoodProvider(graph);
+		}
+
+		@Override
+		public List<Triple> getNeighbourhood(RDFTerm node, Set<IRI> forwardPredicates, Set<IRI> inversePredicates) {
+			calls.merge(node, 1, Integer::sum);
+			return provider.getNeighbourhood(node, forwardPredicates, inversePredicates);
+		}
+	}
+}
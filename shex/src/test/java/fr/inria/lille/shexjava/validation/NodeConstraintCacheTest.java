@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.rdf.api.IRI;
+import org.apache.commons.rdf.api.Literal;
+import org.apache.commons.rdf.api.RDFTerm;
+import org.junit.Test;
+
+import fr.inria.lille.shexjava.GlobalFactory;
+import fr.inria.lille.shexjava.schema.abstrsynt.NodeConstraint;
+import fr.inria.lille.shexjava.schema.concrsynt.Constraint;
+import fr.inria.lille.shexjava.schema.concrsynt.DatatypeConstraint;
+
+public class NodeConstraintCacheTest {
+	static IRI xsdInteger = GlobalFactory.RDFFactory.createIRI("http://www.w3.org/2001/XMLSchema#integer");
+
+	private static Literal integer(int value) {
+		return GlobalFactory.RDFFactory.createLiteral(Integer.toString(value), xsdInteger);
+	}
+
+	@Test
+	public void testRepeatedCallsAreHits() {
+		CountingConstraint constraint = new CountingConstraint();
+		NodeConstraint nc = new NodeConstraint(Collections.singletonList(constraint));
+		nc.setCacheSize(10);
+		Literal one = integer(1);
+		for (int i = 0; i < 5; i++)
+			assertTrue(nc.contains(one));
+		assertFalse(nc.contains(GlobalFactory.RDFFactory.createLiteral("one")));
+		assertFalse(nc.contains(GlobalFactory.RDFFactory.createLiteral("one")));
+		assertEquals(2, constraint.nbCalls);
+		assertEquals(2, nc.getCacheMisses());
+		assertEquals(5, nc.getCacheHits());
+		// an equal literal is answered by the cache
+		assertTrue(nc.contains(integer(1)));
+		assertEquals(6, nc.getCacheHits());
+	}
+
+	@Test
+	public void testEvictionAtMaxSize() {
+		CountingConstraint constraint = new CountingConstraint();
+		NodeConstraint nc = new NodeConstraint(Collections.singletonList(constraint));
+		nc.setCacheSize(3);
+		assertEquals(3, nc.getCacheSize());
+		for (int i = 0; i < 3; i++)
+			nc.contains(integer(i));
+		// 0 becomes the most recently used, so 1 is evicted when 3 is added
+		nc.contains(integer(0));
+		nc.contains(integer(3));
+		assertEquals(4, constraint.nbCalls);
+		nc.contains(integer(0));
+		nc.contains(integer(2));
+		nc.contains(integer(3));
+		assertEquals(4, constraint.nbCalls);
+		nc.contains(integer(1));
+		assertEquals(5, constraint.nbCalls);
+		assertEquals(5, nc.getCacheMisses());
+		assertEquals(4, nc.getCacheHits());
+	}
+
+	@Test
+	public void testDisableResetsTheCache() {
+		CountingConstraint constraint = new CountingConstraint();
+		NodeConstraint nc = new NodeConstraint(Collections.singletonList(constraint));
+		nc.setCacheSize(10);
+		nc.contains(integer(1));
+		nc.contains(integer(1));
+		assertEquals(1, nc.getCacheHits());
+
+		nc.setCacheSize(0);
+		assertEquals(0, nc.getCacheSize());
+		assertEquals(0, nc.getCacheHits());
+		assertEquals(0, nc.getCacheMisses());
+		nc.contains(integer(1));
+		nc.contains(integer(1));
+		// every call evaluates the constraints and is not counted
+		assertEquals(3, constraint.nbCalls);
+		assertEquals(0, nc.getCacheHits());
+		assertEquals(0, nc.getCacheMisses());
+
+		// the results memorized before are dropped
+		nc.setCacheSize(10);
+		nc.contains(integer(1));
+		assertEquals(4, constraint.nbCalls);
+		assertEquals(1, nc.getCacheMisses());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeSize() {
+		new NodeConstraint(Collections.singletonList(new CountingConstraint())).setCacheSize(-1);
+	}
+
+
+	/** Tests the xsd:integer datatype and counts the evaluations. */
+	static class CountingConstraint implements Constraint {
+		private final Constraint datatype = new DatatypeConstraint(xsdInteger);
+		int nbCalls = 0;
+
+		@Override
+		public boolean contains(RDFTerm node) {
+			nbCalls++;
+			return datatype.contains(node);
+		}
+
+		@Override
+		public String toPrettyString() {
+			return datatype.toPrettyString();
+		}
+
+		@Override
+		public String toPrettyString(Map<String, String> prefixes) {
+			return datatype.toPrettyString(prefixes);
+		}
+	}
+}
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.rdf.api.Graph;
+import org.apache.commons.rdf.api.IRI;
+import org.junit.Test;
+
+import fr.inria.lille.shexjava.GlobalFactory;
+import fr.inria.lille.shexjava.schema.Label;
+import fr.inria.lille.shexjava.schema.ShexSchema;
+import fr.inria.lille.shexjava.schema.parsing.ShExCParser;
+import fr.inria.lille.shexjava.shapeMap.BaseShapeMap;
+import fr.inria.lille.shexjava.shapeMap.ResultShapeMap;
+import fr.inria.lille.shexjava.shapeMap.abstrsynt.ShapeAssociation;
+import fr.inria.lille.shexjava.shapeMap.parsing.ShapeMapParsing;
+
+public class ParallelValidationTest {
+	protected ShapeMapParsing parser = new ShapeMapParsing();
+	protected ShExCParser shexParser = new ShExCParser();
+
+	static IRI a = GlobalFactory.RDFFactory.createIRI("http://www.w3.org/1999/02/22-rdf-syntax-ns#type");
+	static IRI human = GlobalFactory.RDFFactory.createIRI("http://a.b/human");
+	static IRI first = GlobalFactory.RDFFactory.createIRI("http://a.b/first");
+	static IRI knows = GlobalFactory.RDFFactory.createIRI("http://a.b/knows");
+
+	static String schemaSt = "<http://inria.fr/Person> { a [<http://a.b/human>]; <http://a.b/first> IRI; <http://a.b/knows> @<http://inria.fr/Person>* }";
+	static String shMap = "{ FOCUS a _ } @<http://inria.fr/Person>";
+
+	private Graph createGraph(int size) {
+		Graph graph = GlobalFactory.RDFFactory.createGraph();
+		for (int i = 0; i < size; i++) {
+			IRI node = GlobalFactory.RDFFactory.createIRI("http://a.b/n"+i);
+			graph.add(node, a, human);
+			// every third node has no valid first name
+			if (i % 3 == 0)
+				graph.add(node, first, GlobalFactory.RDFFactory.createLiteral("n"+i));
+			else
+				graph.add(node, first, GlobalFactory.RDFFactory.createIRI("http://a.b/name"+i));
+			if ((i+1) % 3 != 0)
+				graph.add(node, knows, GlobalFactory.RDFFactory.createIRI("http://a.b/n"+((i+1)%size)));
+		}
+		return graph;
+	}
+
+	@Test
+	public void testSameResultAsSequential() throws Exception {
+		Graph graph = createGraph(50);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			ShexSchema schema = new ShexSchema(shexParser.getRules(new ByteArrayInputStream(schemaSt.getBytes())));
+			BaseShapeMap shapeMap = parser.parse(new ByteArrayInputStream(shMap.getBytes()));
+
+			ResultShapeMap expected = new RecursiveValidationWithMemorization(schema, graph).validate(shapeMap);
+			ParallelValidation parallel = new ParallelValidation(schema, graph);
+			parallel.setChunkSize(3);
+			ResultShapeMap result = parallel.validate(shapeMap, null, executor);
+
+			List<ShapeAssociation> expectedList = new ArrayList<>(expected.getAssociations());
+			List<ShapeAssociation> resultList = new ArrayList<>(result.getAssociations());
+			assertEquals(expectedList.size(), resultList.size());
+			for (int i = 0; i < expectedList.size(); i++) {
+				assertEquals(expectedList.get(i).getNodeSelector().toString(), resultList.get(i).getNodeSelector().toString());
+				assertEquals(expectedList.get(i).getStatus().get(), resultList.get(i).getStatus().get());
+			}
+			Label person = new Label(GlobalFactory.RDFFactory.createIRI("http://inria.fr/Person"));
+			assertEquals(Status.CONFORMANT, parallel.getTyping().getStatus(GlobalFactory.RDFFactory.createIRI("http://a.b/n1"), person));
+			assertEquals(Status.NONCONFORMANT, parallel.getTyping().getStatus(GlobalFactory.RDFFactory.createIRI("http://a.b/n3"), person));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testOneControllerByChunk() throws Exception {
+		Graph graph = createGraph(50);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			ShexSchema schema = new ShexSchema(shexParser.getRules(new ByteArrayInputStream(schemaSt.getBytes())));
+			BaseShapeMap shapeMap = parser.parse(new ByteArrayInputStream(shMap.getBytes()));
+
+			ResultShapeMap expected = new RecursiveValidationWithMemorization(schema, graph).validate(shapeMap);
+			ParallelValidation parallel = new ParallelValidation(schema, graph);
+			parallel.setChunkSize(3);
+			Queue<ThreadCheckingController> controllers = new ConcurrentLinkedQueue<>();
+			ResultShapeMap result = parallel.validate(shapeMap, () -> {
+				ThreadCheckingController controller = new ThreadCheckingController();
+				controllers.add(controller);
+				return controller;
+			}, executor);
+
+			List<ShapeAssociation> expectedList = new ArrayList<>(expected.getAssociations());
+			List<ShapeAssociation> resultList = new ArrayList<>(result.getAssociations());
+			assertEquals(expectedList.size(), resultList.size());
+			for (int i = 0; i < expectedList.size(); i++)
+				assertEquals(expectedList.get(i).getStatus().get(), resultList.get(i).getStatus().get());
+			// 50 pairs in chunks of 3
+			assertEquals(17, controllers.size());
+			for (ThreadCheckingController controller:controllers)
+				assertTrue(controller.usedByOneThread);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expected = CompControllerException.class)
+	public void testControllerExceptionIsPropagated() throws Exception {
+		Graph graph = createGraph(50);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			ShexSchema schema = new ShexSchema(shexParser.getRules(new ByteArrayInputStream(schemaSt.getBytes())));
+			BaseShapeMap shapeMap = parser.parse(new ByteArrayInputStream(shMap.getBytes()));
+
+			ParallelValidation parallel = new ParallelValidation(schema, graph);
+			parallel.setChunkSize(3);
+			parallel.validate(shapeMap, NoComputationController::new, executor);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testResetKeepsSharedTyping() throws Exception {
+		Graph graph = createGraph(6);
+		ShexSchema schema = new ShexSchema(shexParser.getRules(new ByteArrayInputStream(schemaSt.getBytes())));
+		Label person = new Label(GlobalFactory.RDFFactory.createIRI("http://inria.fr/Person"));
+		IRI n1 = GlobalFactory.RDFFactory.createIRI("http://a.b/n1");
+		ConcurrentTyping typing = new ConcurrentTyping();
+		ValidationAlgorithm validator = new RecursiveValidationWithMemorization(schema, graph, typing);
+		assertTrue(validator.validate(n1, person));
+		// the reset through the interface only drops the state of the validator
+		validator.resetTyping();
+		assertTrue(validator.getTyping() == typing);
+		assertEquals(Status.CONFORMANT, typing.getStatus(n1, person));
+		assertTrue(validator.validate(n1, person));
+	}
+
+	static class CompControllerException extends Exception {}
+
+	static class NoComputationController implements ComputationController {
+		@Override
+		public void start() {
+		}
+
+		@Override
+		public void canContinue() throws Exception {
+			throw new CompControllerException();
+		}
+	}
+
+	static class ThreadCheckingController implements ComputationController {
+		private Thread owner;
+		volatile boolean usedByOneThread = true;
+
+		@Override
+		public void start() {
+			check();
+		}
+
+		@Override
+		public void canContinue() {
+			check();
+		}
+
+		private void check() {
+			if (owner == null)
+				owner = Thread.currentThread();
+			else if (owner != Thread.currentThread())
+				usedByOneThread = false;
+		}
+	}
+
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.commons.rdf.api.Graph;
+import org.apache.commons.rdf.api.IRI;
+import org.apache.commons.rdf.api.RDFTerm;
+import org.apache.commons.rdf.api.Triple;
+import org.junit.Test;
+
+import fr.inria.lille.shexjava.GlobalFactory;
+import fr.inria.lille.shexjava.schema.Label;
+import fr.inria.lille.shexjava.schema.ShexSchema;
+import fr.inria.lille.shexjava.schema.parsing.ShExCParser;
+import fr.inria.lille.shexjava.util.Pair;
+import fr.inria.lille.shexjava.util.TermDictionary;
+
+public class RevalidationTest {
+	static IRI n1 = GlobalFactory.RDFFactory.createIRI("http://a.b/n1");
+	static IRI n2 = GlobalFactory.RDFFactory.createIRI("http://a.b/n2");
+	static IRI team = GlobalFactory.RDFFactory.createIRI("http://a.b/team");
+	static IRI john = GlobalFactory.RDFFactory.createIRI("http://a.b/node/john");
+	static IRI smith = GlobalFactory.RDFFactory.createIRI("http://a.b/node/smith");
+	static IRI paul = GlobalFactory.RDFFactory.createIRI("http://a.b/node/paul");
+	static IRI first = GlobalFactory.RDFFactory.createIRI("http://a.b/first");
+	static IRI last = GlobalFactory.RDFFactory.createIRI("http://a.b/last");
+	static IRI member = GlobalFactory.RDFFactory.createIRI("http://a.b/member");
+
+	static Label person = new Label(GlobalFactory.RDFFactory.createIRI("http://inria.fr/Person"));
+	static Label teamLabel = new Label(GlobalFactory.RDFFactory.createIRI("http://inria.fr/Team"));
+
+	static Triple n1_first_john = GlobalFactory.RDFFactory.createTriple(n1, first, john);
+	static Triple n1_last_smith = GlobalFactory.RDFFactory.createTriple(n1, last, smith);
+	static Triple n2_first_paul = GlobalFactory.RDFFactory.createTriple(n2, first, paul);
+	static Triple team_member_n1 = GlobalFactory.RDFFactory.createTriple(team, member, n1);
+	static Triple team_member_n2 = GlobalFactory.RDFFactory.createTriple(team, member, n2);
+
+	static String schemaSt = "<http://inria.fr/Person> { <http://a.b/first> IRI; <http://a.b/last> IRI }\n"
+			+ "<http://inria.fr/Team> { <http://a.b/member> @<http://inria.fr/Person> + }";
+
+	private RecursiveValidationWithMemorization createValidator(Graph graph) throws Exception {
+		ShexSchema schema = new ShexSchema(new ShExCParser().getRules(new ByteArrayInputStream(schemaSt.getBytes())));
+		RecursiveValidationWithMemorization algo = new RecursiveValidationWithMemorization(schema, graph);
+		algo.setIncremental(true);
+		return algo;
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRequiresIncrementalMode() throws Exception {
+		Graph graph = GlobalFactory.RDFFactory.createGraph();
+		graph.add(n1_first_john);
+		graph.add(n1_last_smith);
+
+		RecursiveValidationWithMemorization algo = createValidator(graph);
+		algo.setIncremental(false);
+		assertTrue(algo.validate(n1, person));
+		algo.revalidate(Collections.emptySet(), Collections.singleton(n1_last_smith));
+	}
+
+	@Test
+	public void testRemovedTripleInvalidatesDependents() throws Exception {
+		Graph graph = GlobalFactory.RDFFactory.createGraph();
+		graph.add(n1_first_john);
+		graph.add(n1_last_smith);
+		graph.add(team_member_n1);
+
+		RecursiveValidationWithMemorization algo = createValidator(graph);
+		assertTrue(algo.validate(team, teamLabel));
+		assertTrue(algo.getTyping().isConformant(n1, person));
+
+		graph.remove(n1_last_smith);
+		Set<Pair<RDFTerm,Label>> changed = algo.revalidate(Collections.emptySet(), Collections.singleton(n1_last_smith));
+		assertEquals(2, changed.size());
+		assertTrue(changed.contains(new Pair<>(n1, person)));
+		assertTrue(changed.contains(new Pair<>(team, teamLabel)));
+		assertFalse(algo.getTyping().isConformant(n1, person));
+		assertFalse(algo.getTyping().isConformant(team, teamLabel));
+	}
+
+	@Test
+	public void testAddedTripleKeepsUnrelatedResults() throws Exception {
+		Graph graph = GlobalFactory.RDFFactory.createGraph();
+		graph.add(n1_first_john);
+		graph.add(n1_last_smith);
+		graph.add(n2_first_paul);
+		graph.add(team_member_n1);
+
+		RecursiveValidationWithMemorization algo = createValidator(graph);
+		assertTrue(algo.validate(team, teamLabel));
+		assertFalse(algo.validate(n2, person));
+
+		graph.add(team_member_n2);
+		Set<Pair<RDFTerm,Label>> changed = algo.revalidate(Collections.singleton(team_member_n2), Collections.emptySet());
+		assertEquals(Collections.singleton(new Pair<>(team, teamLabel)), changed);
+		assertFalse(algo.getTyping().isConformant(team, teamLabel));
+		assertTrue(algo.getTyping().isConformant(n1, person));
+	}
+
+	@Test
+	public void testResetReleasesTerms() throws Exception {
+		Graph graph = GlobalFactory.RDFFactory.createGraph();
+		graph.add(n1_first_john);
+		graph.add(n1_last_smith);
+		graph.add(team_member_n1);
+
+		RecursiveValidationWithMemorization algo = createValidator(graph);
+		assertTrue(algo.validate(team, teamLabel));
+		TermDictionary dictionary = algo.dictionary;
+		assertTrue(dictionary.getNbTerms() > 0);
+
+		// the validator no longer references the terms of the previous validations
+		algo.resetTyping();
+		assertNotSame(dictionary, algo.dictionary);
+		assertEquals(0, algo.dictionary.getNbTerms());
+		assertEquals(Status.NOTCOMPUTED, algo.getTyping().getStatus(team, teamLabel));
+
+		graph.remove(n1_last_smith);
+		assertFalse(algo.validate(team, teamLabel));
+	}
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (C) 2018 Université de Lille - Inria
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package fr.inria.lille.shexjava.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+
+import org.apache.commons.rdf.api.Graph;
+import org.apache.commons.rdf.api.IRI;
+import org.junit.Test;
+
+import fr.inria.lille.shexjava.GlobalFactory;
+import fr.inria.lille.shexjava.schema.Label;
+import fr.inria.lille.shexjava.schema.ShexSchema;
+import fr.inria.lille.shexjava.schema.parsing.ShExCParser;
+
+public class ScopedRefineValidationTest {
+	static IRI n1 = GlobalFactory.RDFFactory.createIRI("http://a.b/n1");
+	static IRI n2 = GlobalFactory.RDFFactory.createIRI("http://a.b/n2");
+	static IRI n3 = GlobalFactory.RDFFactory.createIRI("http://a.b/n3");
+	static IRI n4 = GlobalFactory.RDFFactory.createIRI("http://a.b/n4");
+	static IRI knows = GlobalFactory.RDFFactory.createIRI("http://a.b/knows");
+	static IRI name = GlobalFactory.RDFFactory.createIRI("http://a.b/name");
+
+	static Label person = new Label(GlobalFactory.RDFFactory.createIRI("http://inria.fr/Person"));
+	static Label notPerson = new Label(GlobalFactory.RDFFactory.createIRI("http://inria.fr/NotPerson"));
+
+	static String schemaSt = "<http://inria.fr/Person> { <http://a.b/name> . ; <http://a.b/knows> @<http://inria.fr/Person> * }\n"
+			+ "<http://inria.fr/NotPerson> NOT @<http://inria.fr/Person>";
+
+	@Test
+	public void testScopedTypingIsRestrictedToReachablePairs() throws Exception {
+		Graph graph = GlobalFactory.RDFFactory.createGraph();
+		graph.add(n1, name, GlobalFactory.RDFFactory.createLiteral("a"));
+		graph.add(n1, knows, n2);
+		graph.add(n2, name, GlobalFactory.RDFFactory.createLiteral("b"));
+		graph.add(n2, knows, n1);
+		graph.add(n3, knows, n4);
+		graph.add(n4, name, GlobalFactory.RDFFactory.createLiteral("d"));
+
+		ShexSchema schema = new ShexSchema(new ShExCParser().getRules(new ByteArrayInputStream(schemaSt.getBytes())));
+		RefineValidation full = new RefineValidation(schema, graph);
+		RefineValidation scoped = new RefineValidation(schema, graph, true);
+
+		assertTrue(scoped.validate(n1, person));
+		assertEquals(full.validate(n1, person), scoped.validate(n1, person));
+		assertEquals(Status.NOTCOMPUTED, scoped.getTyping().getStatus(n3, person));
+		assertEquals(Status.NOTCOMPUTED, scoped.getTyping().getStatus(n4, person));
+
+		assertFalse(scoped.validate(n3, person));
+		assertTrue(scoped.validate(n3, notPerson));
+		assertEquals(full.validate(n3, notPerson), scoped.validate(n3, notPerson));
+		assertEquals(full.validate(n4, person), scoped.validate(n4, person));
+	}
+}